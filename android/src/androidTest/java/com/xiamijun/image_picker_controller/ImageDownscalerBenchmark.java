@@ -0,0 +1,153 @@
+package com.xiamijun.image_picker_controller;
+
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares {@link ImageDownscaler} with {@code Bitmap.createScaledBitmap}: PSNR against an exact
+ * box-filtered reference, and time per downscale. Results are logged under {@link #TAG}.
+ *
+ * <p>The source is a zone plate, whose frequency rises towards the corners, so any aliasing shows
+ * up as error against the reference. Ratios are whole numbers so the reference is exact: each
+ * output pixel is the mean of a ratio x ratio block.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageDownscalerBenchmark {
+  private static final String TAG = "ImageDownscalerBenchmark";
+  private static final int SOURCE_WIDTH = 2400;
+  private static final int SOURCE_HEIGHT = 1600;
+  private static final int WARMUP_RUNS = 2;
+  private static final int TIMED_RUNS = 5;
+  // Area averaging should stay this close to the reference; bilinear sampling of a zone plate
+  // cannot.
+  private static final double MIN_PSNR = 25;
+
+  @Test
+  public void downscaleByFour() {
+    benchmark(4);
+  }
+
+  @Test
+  public void downscaleByThree() {
+    // 2400 -> 1200 by halving, then a 1.5x area pass down to 800.
+    benchmark(3);
+  }
+
+  private static void benchmark(int ratio) {
+    int[] pixels = zonePlate(SOURCE_WIDTH, SOURCE_HEIGHT);
+    Bitmap source = Bitmap.createBitmap(SOURCE_WIDTH, SOURCE_HEIGHT, Bitmap.Config.ARGB_8888);
+    source.setPixels(pixels, 0, SOURCE_WIDTH, 0, 0, SOURCE_WIDTH, SOURCE_HEIGHT);
+    int width = SOURCE_WIDTH / ratio;
+    int height = SOURCE_HEIGHT / ratio;
+    int[] reference = boxFilter(pixels, SOURCE_WIDTH, ratio, width, height);
+
+    Bitmap areaAveraged = ImageDownscaler.downscale(source, width, height);
+    Bitmap bilinear = Bitmap.createScaledBitmap(source, width, height, true);
+    double areaPsnr = psnr(reference, areaAveraged);
+    double bilinearPsnr = psnr(reference, bilinear);
+    areaAveraged.recycle();
+    bilinear.recycle();
+
+    long areaMs = time(source, width, height, true);
+    long bilinearMs = time(source, width, height, false);
+    source.recycle();
+
+    Log.i(
+        TAG,
+        String.format(
+            "%dx%d -> %dx%d: ImageDownscaler %.2f dB %d ms, createScaledBitmap %.2f dB %d ms",
+            SOURCE_WIDTH,
+            SOURCE_HEIGHT,
+            width,
+            height,
+            areaPsnr,
+            areaMs,
+            bilinearPsnr,
+            bilinearMs));
+    assertTrue("PSNR " + areaPsnr + " below " + MIN_PSNR, areaPsnr >= MIN_PSNR);
+    assertTrue(
+        "ImageDownscaler " + areaPsnr + " dB not above createScaledBitmap " + bilinearPsnr + " dB",
+        areaPsnr > bilinearPsnr);
+  }
+
+  /** Mean milliseconds per downscale, after warm-up runs. */
+  private static long time(Bitmap source, int width, int height, boolean areaAveraging) {
+    long total = 0;
+    for (int i = 0; i < WARMUP_RUNS + TIMED_RUNS; i++) {
+      long start = SystemClock.elapsedRealtimeNanos();
+      Bitmap scaled =
+          areaAveraging
+              ? ImageDownscaler.downscale(source, width, height)
+              : Bitmap.createScaledBitmap(source, width, height, true);
+      long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+      scaled.recycle();
+      if (i >= WARMUP_RUNS) {
+        total += elapsed;
+      }
+    }
+    return total / TIMED_RUNS / 1000000;
+  }
+
+  /** Opaque grey zone plate, cos(k * r^2), with a period of two pixels at the far corner. */
+  private static int[] zonePlate(int width, int height) {
+    int[] pixels = new int[width * height];
+    double k = Math.PI / (2.0 * Math.hypot(width, height));
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int value = (int) Math.round(127.5 + 127.5 * Math.cos(k * (x * x + y * y)));
+        pixels[y * width + x] = 0xff000000 | value << 16 | value << 8 | value;
+      }
+    }
+    return pixels;
+  }
+
+  private static int[] boxFilter(int[] pixels, int sourceWidth, int ratio, int width, int height) {
+    int[] output = new int[width * height];
+    double area = ratio * ratio;
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        double r = 0;
+        double g = 0;
+        double b = 0;
+        for (int sy = y * ratio; sy < (y + 1) * ratio; sy++) {
+          for (int sx = x * ratio; sx < (x + 1) * ratio; sx++) {
+            int pixel = pixels[sy * sourceWidth + sx];
+            r += (pixel >> 16) & 0xff;
+            g += (pixel >> 8) & 0xff;
+            b += pixel & 0xff;
+          }
+        }
+        output[y * width + x] =
+            0xff000000
+                | (int) Math.round(r / area) << 16
+                | (int) Math.round(g / area) << 8
+                | (int) Math.round(b / area);
+      }
+    }
+    return output;
+  }
+
+  private static double psnr(int[] reference, Bitmap bitmap) {
+    int width = bitmap.getWidth();
+    int height = bitmap.getHeight();
+    int[] pixels = new int[width * height];
+    bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+    double squaredError = 0;
+    for (int i = 0; i < pixels.length; i++) {
+      for (int shift = 0; shift <= 16; shift += 8) {
+        int difference = ((pixels[i] >> shift) & 0xff) - ((reference[i] >> shift) & 0xff);
+        squaredError += difference * difference;
+      }
+    }
+    double mse = squaredError / (pixels.length * 3.0);
+    return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / mse);
+  }
+}
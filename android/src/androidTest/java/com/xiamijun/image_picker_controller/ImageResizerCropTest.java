@@ -0,0 +1,114 @@
+package com.xiamijun.image_picker_controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.media.ExifInterface;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks {@link ImageResizer#storedCropRect} and {@link ImageResizer#orientationMatrix} for every
+ * EXIF orientation of a 400 x 300 stored image.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageResizerCropTest {
+  private static final int WIDTH = 400;
+  private static final int HEIGHT = 300;
+
+  private static final int[] ORIENTATIONS = {
+    ExifInterface.ORIENTATION_NORMAL,
+    ExifInterface.ORIENTATION_FLIP_HORIZONTAL,
+    ExifInterface.ORIENTATION_ROTATE_180,
+    ExifInterface.ORIENTATION_FLIP_VERTICAL,
+    ExifInterface.ORIENTATION_TRANSPOSE,
+    ExifInterface.ORIENTATION_ROTATE_90,
+    ExifInterface.ORIENTATION_TRANSVERSE,
+    ExifInterface.ORIENTATION_ROTATE_270,
+  };
+
+  // Where the top-left stored pixel is displayed, in the same order as ORIENTATIONS.
+  private static final float[][] TOP_LEFT_DISPLAYED_AT = {
+    {0, 0}, {WIDTH, 0}, {WIDTH, HEIGHT}, {0, HEIGHT}, {0, 0}, {HEIGHT, 0}, {HEIGHT, WIDTH},
+    {0, WIDTH},
+  };
+
+  @Test
+  public void orientationMatrixMovesTheTopLeftCorner() {
+    for (int i = 0; i < ORIENTATIONS.length; i++) {
+      float[] point = {0, 0};
+      ImageResizer.orientationMatrix(ORIENTATIONS[i], WIDTH, HEIGHT).mapPoints(point);
+      assertEquals("orientation " + ORIENTATIONS[i], TOP_LEFT_DISPLAYED_AT[i][0], point[0], 0);
+      assertEquals("orientation " + ORIENTATIONS[i], TOP_LEFT_DISPLAYED_AT[i][1], point[1], 0);
+    }
+  }
+
+  @Test
+  public void orientationMatrixFillsTheDisplayedBox() {
+    for (int orientation : ORIENTATIONS) {
+      RectF box = new RectF(0, 0, WIDTH, HEIGHT);
+      ImageResizer.orientationMatrix(orientation, WIDTH, HEIGHT).mapRect(box);
+      boolean transposed = ImageProbe.isTransposed(orientation);
+      assertEquals(
+          "orientation " + orientation,
+          new RectF(0, 0, transposed ? HEIGHT : WIDTH, transposed ? WIDTH : HEIGHT),
+          box);
+    }
+  }
+
+  @Test
+  public void storedCropRectIsDisplayedAsTheCrop() {
+    RectF crop = new RectF(10, 20, 110, 70);
+    for (int orientation : ORIENTATIONS) {
+      ImageResizer.Options options = new ImageResizer.Options();
+      options.crop = new RectF(crop);
+      Rect stored = ImageResizer.storedCropRect(probe(orientation), options);
+
+      RectF displayed = new RectF(stored);
+      Matrix matrix = ImageResizer.orientationMatrix(orientation, WIDTH, HEIGHT);
+      matrix.mapRect(displayed);
+      assertEquals("orientation " + orientation, crop, displayed);
+    }
+  }
+
+  @Test
+  public void storedCropRectScalesNormalizedCrops() {
+    ImageResizer.Options options = new ImageResizer.Options();
+    options.crop = new RectF(0, 0, 0.5f, 0.5f);
+    options.cropNormalized = true;
+    // Displayed 300 x 400, so the crop is (0, 0, 150, 200) as displayed.
+    assertEquals(
+        new Rect(0, 150, 200, 300),
+        ImageResizer.storedCropRect(probe(ExifInterface.ORIENTATION_ROTATE_90), options));
+  }
+
+  @Test
+  public void storedCropRectCentresTheAspectRatio() {
+    ImageResizer.Options options = new ImageResizer.Options();
+    options.aspectRatio = 1.0;
+    assertEquals(
+        new Rect(50, 0, 350, 300),
+        ImageResizer.storedCropRect(probe(ExifInterface.ORIENTATION_NORMAL), options));
+    // Displayed 300 x 400: the square is (0, 50, 300, 350) as displayed.
+    assertEquals(
+        new Rect(50, 0, 350, 300),
+        ImageResizer.storedCropRect(probe(ExifInterface.ORIENTATION_ROTATE_90), options));
+  }
+
+  @Test
+  public void storedCropRectIsNullOutsideTheImage() {
+    ImageResizer.Options options = new ImageResizer.Options();
+    options.crop = new RectF(500, 500, 600, 600);
+    assertNull(ImageResizer.storedCropRect(probe(ExifInterface.ORIENTATION_NORMAL), options));
+  }
+
+  private static ImageProbe probe(int orientation) {
+    return new ImageProbe(ImageProbe.FORMAT_JPEG, WIDTH, HEIGHT, orientation, 0);
+  }
+}
@@ -0,0 +1,186 @@
+package com.xiamijun.image_picker_controller;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-disk index of the album list, so that album lists can be served before MediaStore has been
+ * scanned.
+ *
+ * <p>One entry is kept per media type filter, holding the albums (id, name, count, cover) and the
+ * change token of {@link MediaStoreQuery#currentToken()} they were scanned at. A cached entry
+ * whose token still matches the current one is exact and needs no rescan.
+ *
+ * <p>Synchronized, since album lists are read on the {@link MediaStoreQuery} thread and reconciled
+ * on its background one.
+ */
+class AlbumIndexCache {
+  private static final String TAG = "AlbumIndexCache";
+  private static final String FILE_NAME = "image_picker_album_index.json";
+  private static final int VERSION = 1;
+
+  private static final String KEY_VERSION = "version";
+  private static final String KEY_ENTRIES = "entries";
+  private static final String KEY_TOKEN = "token";
+  private static final String KEY_ALBUMS = "albums";
+
+  static class Entry {
+    final String token;
+    final List<Map<String, Object>> albums;
+
+    Entry(String token, List<Map<String, Object>> albums) {
+      this.token = token;
+      this.albums = albums;
+    }
+  }
+
+  private final File file;
+  @Nullable private Map<String, Entry> entries;
+
+  AlbumIndexCache(Context context) {
+    this.file = new File(ContextCompat.getNoBackupFilesDir(context), FILE_NAME);
+  }
+
+  synchronized boolean exists() {
+    return entries != null ? !entries.isEmpty() : file.exists();
+  }
+
+  @Nullable
+  synchronized Entry get(String key) {
+    return load().get(key);
+  }
+
+  synchronized List<String> keys() {
+    return new ArrayList<>(load().keySet());
+  }
+
+  synchronized void put(String key, String token, List<Map<String, Object>> albums) {
+    load().put(key, new Entry(token, albums));
+    save();
+  }
+
+  synchronized void clear() {
+    entries = new HashMap<>();
+    if (file.exists() && !file.delete()) {
+      Log.w(TAG, "Unable to delete " + file);
+    }
+  }
+
+  private Map<String, Entry> load() {
+    if (entries != null) {
+      return entries;
+    }
+    entries = new HashMap<>();
+    if (!file.exists()) {
+      return entries;
+    }
+    try {
+      JSONObject root = new JSONObject(readFile(file));
+      if (root.optInt(KEY_VERSION) != VERSION) {
+        return entries;
+      }
+      JSONObject json = root.getJSONObject(KEY_ENTRIES);
+      JSONArray names = json.names();
+      for (int i = 0; names != null && i < names.length(); i++) {
+        String key = names.getString(i);
+        JSONObject entry = json.getJSONObject(key);
+        entries.put(
+            key,
+            new Entry(entry.getString(KEY_TOKEN), albumsFromJson(entry.getJSONArray(KEY_ALBUMS))));
+      }
+    } catch (IOException | JSONException e) {
+      Log.w(TAG, "Discarding unreadable album index", e);
+      entries.clear();
+    }
+    return entries;
+  }
+
+  private void save() {
+    try {
+      JSONObject json = new JSONObject();
+      for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+        JSONObject value = new JSONObject();
+        value.put(KEY_TOKEN, entry.getValue().token);
+        value.put(KEY_ALBUMS, albumsToJson(entry.getValue().albums));
+        json.put(entry.getKey(), value);
+      }
+      JSONObject root = new JSONObject();
+      root.put(KEY_VERSION, VERSION);
+      root.put(KEY_ENTRIES, json);
+
+      // Write then rename so a crash never leaves a truncated index behind.
+      File temp = new File(file.getPath() + ".tmp");
+      OutputStream out = new FileOutputStream(temp);
+      try {
+        out.write(root.toString().getBytes("UTF-8"));
+      } finally {
+        out.close();
+      }
+      if (!temp.renameTo(file)) {
+        Log.w(TAG, "Unable to replace " + file);
+      }
+    } catch (IOException | JSONException e) {
+      Log.w(TAG, "Unable to save album index", e);
+    }
+  }
+
+  private static JSONArray albumsToJson(List<Map<String, Object>> albums) throws JSONException {
+    JSONArray array = new JSONArray();
+    for (Map<String, Object> album : albums) {
+      JSONObject json = new JSONObject();
+      for (Map.Entry<String, Object> field : album.entrySet()) {
+        json.put(field.getKey(), field.getValue() == null ? JSONObject.NULL : field.getValue());
+      }
+      array.put(json);
+    }
+    return array;
+  }
+
+  private static List<Map<String, Object>> albumsFromJson(JSONArray array) throws JSONException {
+    List<Map<String, Object>> albums = new ArrayList<>();
+    for (int i = 0; i < array.length(); i++) {
+      JSONObject json = array.getJSONObject(i);
+      Map<String, Object> album = new HashMap<>();
+      album.put("id", json.getString("id"));
+      album.put("name", json.isNull("name") ? null : json.getString("name"));
+      album.put("count", json.getInt("count"));
+      album.put("coverId", json.getLong("coverId"));
+      album.put("coverUri", json.isNull("coverUri") ? null : json.getString("coverUri"));
+      albums.add(album);
+    }
+    return albums;
+  }
+
+  private static String readFile(File file) throws IOException {
+    InputStream in = new FileInputStream(file);
+    try {
+      byte[] bytes = new byte[(int) file.length()];
+      int offset = 0;
+      int read;
+      while (offset < bytes.length && (read = in.read(bytes, offset, bytes.length - offset)) != -1) {
+        offset += read;
+      }
+      return new String(bytes, 0, offset, "UTF-8");
+    } finally {
+      in.close();
+    }
+  }
+}
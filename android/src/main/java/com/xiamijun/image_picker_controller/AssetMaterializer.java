@@ -0,0 +1,280 @@
+package com.xiamijun.image_picker_controller;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.provider.OpenableColumns;
+import android.util.Log;
+import android.webkit.MimeTypeMap;
+
+import com.luck.picture.lib.entity.LocalMedia;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Lightweight handles for picked media, and the copies made from them on demand.
+ *
+ * <p>In handle mode the picker returns {@link #handle} maps as soon as the selection is confirmed,
+ * without PictureSelector's Android Q sandbox copy or any processing, so the time to result does
+ * not depend on file size. {@link #materialize} later produces a readable file, copied once into
+ * the cache directory and reused while the source keeps its size, or the bytes of the asset.
+ *
+ * <p>Copies are kept under {@link #MAX_CACHE_BYTES}, least recently materialized first out, and a
+ * copy of an edited source replaces the copies of its earlier versions.
+ */
+class AssetMaterializer {
+  static final String RESULT_MODE_HANDLE = "handle";
+
+  private static final String TAG = "AssetMaterializer";
+  private static final String CACHE_DIRECTORY = "materialized_assets";
+  private static final String PARTIAL_SUFFIX = ".part";
+  private static final long MAX_CACHE_BYTES = 512 * 1024 * 1024;
+  // Bytes are sent over the channel in one message; larger assets must be materialized as files.
+  private static final long MAX_BYTES = 32 * 1024 * 1024;
+
+  private final Context context;
+  private final ProcessingScheduler processingScheduler;
+
+  AssetMaterializer(Context context, ProcessingScheduler processingScheduler) {
+    this.context = context.getApplicationContext();
+    this.processingScheduler = processingScheduler;
+  }
+
+  /** The handle of a picked item: id, uri, mime, size, width, height and duration. */
+  static Map<String, Object> handle(LocalMedia media) {
+    Map<String, Object> handle = new HashMap<>();
+    handle.put("id", media.getId());
+    handle.put("uri", uriOf(media));
+    handle.put("mime", media.getMimeType());
+    handle.put("size", media.getSize());
+    handle.put("width", media.getWidth());
+    handle.put("height", media.getHeight());
+    handle.put("duration", media.getDuration());
+    return handle;
+  }
+
+  private static String uriOf(LocalMedia media) {
+    String path = media.getPath();
+    if (path != null && path.startsWith("content://")) {
+      return path;
+    }
+    if (media.getId() > 0) {
+      String mime = media.getMimeType();
+      Uri base =
+          mime != null && mime.startsWith("video")
+              ? MediaStore.Video.Media.EXTERNAL_CONTENT_URI
+              : MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
+      return ContentUris.withAppendedId(base, media.getId()).toString();
+    }
+    return path != null ? Uri.fromFile(new File(path)).toString() : null;
+  }
+
+  /**
+   * Materializes the {@code uri} argument of a handle as a file path, or as bytes when the {@code
+   * bytes} argument is true.
+   */
+  void materialize(MethodCall call, final MethodChannel.Result result) {
+    final String uri = call.argument("uri");
+    if (uri == null) {
+      result.error("invalid_arguments", "uri is required", null);
+      return;
+    }
+    final boolean bytes = Boolean.TRUE.equals(call.argument("bytes"));
+    processingScheduler.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            Object value = null;
+            String errorCode = null;
+            String errorMessage = null;
+            try {
+              value = bytes ? readBytes(Uri.parse(uri)) : materializeFile(Uri.parse(uri));
+            } catch (TooLargeException e) {
+              errorCode = "too_large";
+              errorMessage = e.getMessage();
+            } catch (IOException | RuntimeException e) {
+              errorCode = "materialize_failed";
+              errorMessage = e.getMessage();
+            }
+            final Object finalValue = value;
+            final String finalErrorCode = errorCode;
+            final String finalErrorMessage = errorMessage;
+            processingScheduler.runOnMainThread(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    if (finalErrorCode != null) {
+                      result.error(finalErrorCode, finalErrorMessage, null);
+                    } else {
+                      result.success(finalValue);
+                    }
+                  }
+                });
+          }
+        },
+        uri);
+  }
+
+  /** Returns a readable path for uri, copying content once into the cache directory. */
+  private String materializeFile(Uri uri) throws IOException {
+    if ("file".equals(uri.getScheme())) {
+      return uri.getPath();
+    }
+    ContentResolver resolver = context.getContentResolver();
+    String extension = MimeTypeMap.getSingleton().getExtensionFromMimeType(resolver.getType(uri));
+    File directory = new File(context.getCacheDir(), CACHE_DIRECTORY);
+    if (!directory.exists() && !directory.mkdirs()) {
+      throw new IOException("Unable to create " + directory);
+    }
+    // The size in the name invalidates the copy when the source is edited.
+    String prefix = Integer.toHexString(uri.toString().hashCode()) + "_";
+    String name = prefix + sizeOf(resolver, uri) + (extension != null ? "." + extension : "");
+    File cached = new File(directory, name);
+    if (cached.exists()) {
+      // The modification time orders eviction.
+      cached.setLastModified(System.currentTimeMillis());
+      return cached.getPath();
+    }
+    // Copied under a unique name and renamed, so a concurrent call never sees a partial file.
+    File partial = File.createTempFile(name, PARTIAL_SUFFIX, directory);
+    InputStream in = resolver.openInputStream(uri);
+    if (in == null) {
+      partial.delete();
+      throw new IOException("Unable to open " + uri);
+    }
+    try {
+      OutputStream out = new FileOutputStream(partial);
+      try {
+        copy(in, out);
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      partial.delete();
+      throw e;
+    } finally {
+      in.close();
+    }
+    if (!partial.renameTo(cached)) {
+      partial.delete();
+      if (!cached.exists()) {
+        throw new IOException("Unable to write " + cached);
+      }
+    }
+    evict(directory, prefix, cached);
+    return cached.getPath();
+  }
+
+  /**
+   * Deletes the copies of earlier versions of the source, named with {@code prefix}, then the
+   * least recently used copies until the directory fits {@link #MAX_CACHE_BYTES}. {@code keep} is
+   * never deleted.
+   */
+  private static synchronized void evict(File directory, String prefix, File keep) {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    Arrays.sort(
+        files,
+        new Comparator<File>() {
+          @Override
+          public int compare(File a, File b) {
+            long left = a.lastModified();
+            long right = b.lastModified();
+            return left < right ? -1 : (left == right ? 0 : 1);
+          }
+        });
+    long total = 0;
+    for (File file : files) {
+      total += file.length();
+    }
+    for (File file : files) {
+      String fileName = file.getName();
+      if (file.equals(keep) || fileName.endsWith(PARTIAL_SUFFIX)) {
+        continue;
+      }
+      if (!fileName.startsWith(prefix) && total <= MAX_CACHE_BYTES) {
+        continue;
+      }
+      long length = file.length();
+      if (file.delete()) {
+        total -= length;
+      } else {
+        Log.w(TAG, "Unable to delete " + file);
+      }
+    }
+  }
+
+  private byte[] readBytes(Uri uri) throws IOException {
+    ContentResolver resolver = context.getContentResolver();
+    InputStream in =
+        "file".equals(uri.getScheme())
+            ? new FileInputStream(uri.getPath())
+            : resolver.openInputStream(uri);
+    if (in == null) {
+      throw new IOException("Unable to open " + uri);
+    }
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        if (out.size() + read > MAX_BYTES) {
+          throw new TooLargeException(uri + " is larger than " + MAX_BYTES + " bytes");
+        }
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+
+  private static long sizeOf(ContentResolver resolver, Uri uri) {
+    Cursor cursor = null;
+    try {
+      cursor = resolver.query(uri, new String[] {OpenableColumns.SIZE}, null, null, null);
+      if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+        return cursor.getLong(0);
+      }
+    } catch (RuntimeException e) {
+      // Providers without the column; the copy is then keyed by the uri alone.
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
+    return -1;
+  }
+
+  private static void copy(InputStream in, OutputStream out) throws IOException {
+    byte[] buffer = new byte[64 * 1024];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+  }
+
+  private static class TooLargeException extends IOException {
+    TooLargeException(String message) {
+      super(message);
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package com.xiamijun.image_picker_controller;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Runs images that did not come from the picker, such as shared or downloaded files, through the
+ * same resize pipeline, without launching any activity.
+ *
+ * <p>Every batch keeps its own state, so batches never wait for the delegate's pending result or
+ * for each other beyond sharing the scheduler. Items are queued by source, so {@link
+ * ProcessingScheduler#setPriorities} applies to them, and each one is sent as an {@code
+ * imageReady} processing event, tagged with the batch id, as soon as it is done. The call returns
+ * the output paths, in source order, once the whole batch is done; in bytes result mode small
+ * outputs are returned as bytes instead of paths.
+ */
+class BatchProcessor {
+  private static final String TAG = "BatchProcessor";
+
+  private final Context context;
+  private final ImageResizer imageResizer;
+  private final ProcessingScheduler processingScheduler;
+  private final ProcessingEvents processingEvents;
+  private final SpeculativeProcessor speculativeProcessor;
+  private final FileUtils fileUtils;
+
+  BatchProcessor(
+      Context context,
+      ImageResizer imageResizer,
+      ProcessingScheduler processingScheduler,
+      ProcessingEvents processingEvents,
+      SpeculativeProcessor speculativeProcessor,
+      FileUtils fileUtils) {
+    this.context = context.getApplicationContext();
+    this.imageResizer = imageResizer;
+    this.processingScheduler = processingScheduler;
+    this.processingEvents = processingEvents;
+    this.speculativeProcessor = speculativeProcessor;
+    this.fileUtils = fileUtils;
+  }
+
+  /**
+   * Processes the {@code sources} argument, file paths or {@code file://} / {@code content://}
+   * uris, with the picker configuration in the {@code configuration} argument. {@code batchId}
+   * is echoed in the events.
+   */
+  void processBatch(MethodCall call, final MethodChannel.Result result) {
+    final List<String> sources = call.argument("sources");
+    if (sources == null) {
+      result.error("invalid_arguments", "sources is required", null);
+      return;
+    }
+    final String batchId = call.argument("batchId");
+    PickerConfiguration config = PickerConfiguration.fromMap((Map) call.argument("configuration"));
+    final ProcessingProfile profile = ProcessingProfile.forConfiguration(config, context);
+    final ImageResizer.Options options = ImageResizer.Options.fromConfiguration(config, profile);
+
+    final boolean inline = ImageResizer.RESULT_MODE_BYTES.equals(config.resultMode);
+    final Object[] outputs = new Object[sources.size()];
+    if (outputs.length == 0) {
+      result.success(Arrays.asList(outputs));
+      return;
+    }
+    processingScheduler.acquireProfile(profile);
+    final AtomicInteger remaining = new AtomicInteger(outputs.length);
+    final AtomicLong inlineBudget = new AtomicLong(ImageResizer.MAX_TOTAL_INLINE_BYTES);
+    for (int i = 0; i < outputs.length; i++) {
+      final int index = i;
+      final String source = sources.get(i);
+      processingScheduler.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              outputs[index] = process(source, options, inline ? inlineBudget : null);
+              Map<String, Object> ready =
+                  ProcessingEvents.event(ProcessingEvents.EVENT_IMAGE_READY);
+              ready.put("batchId", batchId);
+              ready.put("index", index);
+              ready.put("path", source);
+              ready.put("resultPath", outputs[index] instanceof String ? outputs[index] : null);
+              processingEvents.send(ready);
+              if (remaining.decrementAndGet() == 0) {
+                processingScheduler.releaseProfile(profile);
+                processingScheduler.runOnMainThread(
+                    new Runnable() {
+                      @Override
+                      public void run() {
+                        result.success(Arrays.asList(outputs));
+                      }
+                    });
+              }
+            }
+          },
+          source);
+    }
+  }
+
+  /**
+   * Returns the resized image, as bytes when inlineBudget is given and the result fits in it, the
+   * readable original when it already fits or cannot be decoded, or null when the source cannot
+   * be read.
+   */
+  @Nullable
+  private Object process(
+      String source, ImageResizer.Options options, @Nullable AtomicLong inlineBudget) {
+    String speculative = speculativeProcessor.take(options, source);
+    if (speculative != null) {
+      return speculative;
+    }
+    String localPath = null;
+    try {
+      localPath = fileUtils.getLocalPath(context, source);
+      if (localPath == null) {
+        return null;
+      }
+      Object resized =
+          inlineBudget != null
+              ? imageResizer.resizeImageInline(localPath, options, inlineBudget)
+              : imageResizer.resizeImageIfNeeded(localPath, options);
+      if (resized != null && !localPath.equals(resized) && FileUtils.isContentUri(source)) {
+        // The copy of a content uri was only needed to decode it.
+        new File(localPath).delete();
+      }
+      return resized != null ? resized : localPath;
+    } catch (RuntimeException e) {
+      Log.e(TAG, "Resizing failed, returning the original image", e);
+      return localPath;
+    }
+  }
+}
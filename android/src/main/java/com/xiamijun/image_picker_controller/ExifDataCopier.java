@@ -11,6 +11,14 @@ import java.util.List;
 
 class ExifDataCopier {
   void copyExif(String filePathOri, String filePathDest) {
+    copyExif(filePathOri, filePathDest, false);
+  }
+
+  /**
+   * Copies the EXIF attributes. When orientationApplied is set the pixels of the destination are
+   * already upright, so its orientation is written as normal instead of copied.
+   */
+  void copyExif(String filePathOri, String filePathDest, boolean orientationApplied) {
     try {
       ExifInterface oldExif = new ExifInterface(filePathOri);
       ExifInterface newExif = new ExifInterface(filePathDest);
@@ -37,8 +45,15 @@ class ExifDataCopier {
               "Model",
               "Orientation");
       for (String attribute : attributes) {
+        if (orientationApplied && ExifInterface.TAG_ORIENTATION.equals(attribute)) {
+          continue;
+        }
         setIfNotNull(oldExif, newExif, attribute);
       }
+      if (orientationApplied) {
+        newExif.setAttribute(
+            ExifInterface.TAG_ORIENTATION, String.valueOf(ExifInterface.ORIENTATION_NORMAL));
+      }
 
       newExif.saveAttributes();
 
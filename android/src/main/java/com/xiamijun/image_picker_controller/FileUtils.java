@@ -25,6 +25,7 @@ package com.xiamijun.image_picker_controller;
 
 import android.content.Context;
 import android.net.Uri;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -39,8 +40,11 @@ class FileUtils {
     OutputStream outputStream = null;
     boolean success = false;
     try {
-      String extension = getImageExtension(uri);
       inputStream = context.getContentResolver().openInputStream(uri);
+      if (inputStream != null) {
+        inputStream = new BufferedInputStream(inputStream);
+      }
+      String extension = getImageExtension(inputStream, uri);
       file = File.createTempFile("image_picker", extension, context.getCacheDir());
       file.deleteOnExit();
       outputStream = new FileOutputStream(file);
@@ -66,8 +70,46 @@ class FileUtils {
     return success ? file.getPath() : null;
   }
 
-  /** @return extension of image with dot, or default .jpg if it none. */
-  private static String getImageExtension(Uri uriImage) {
+  /**
+   * Returns a readable file path for a file path or a {@code file://} or {@code content://} uri.
+   * Content is copied to the cache directory first, see {@link #isContentUri}. Returns null when
+   * the content cannot be read.
+   */
+  String getLocalPath(final Context context, final String source) {
+    Uri uri = Uri.parse(source);
+    if (isContentUri(source)) {
+      return getPathFromUri(context, uri);
+    }
+    if ("file".equals(uri.getScheme())) {
+      return uri.getPath();
+    }
+    return source;
+  }
+
+  static boolean isContentUri(String source) {
+    return source.startsWith("content://");
+  }
+
+  /**
+   * @return extension of image with dot, sniffed from the leading bytes of the stream, else taken
+   *     from the uri path, else default .jpg.
+   */
+  private static String getImageExtension(InputStream inputStream, Uri uriImage) {
+    if (inputStream != null) {
+      try {
+        byte[] header = new byte[ImageProbe.HEADER_SIZE];
+        inputStream.mark(header.length);
+        int length = ImageProbe.readFully(inputStream, header);
+        inputStream.reset();
+        String extension = ImageProbe.extension(ImageProbe.sniffFormat(header, length));
+        if (extension != null) {
+          return extension;
+        }
+      } catch (IOException e) {
+        // Fall back to the uri path.
+      }
+    }
+
     String extension = null;
 
     try {
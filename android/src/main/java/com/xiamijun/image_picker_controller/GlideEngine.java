@@ -30,6 +30,11 @@ import com.luck.picture.lib.widget.longimage.SubsamplingScaleImageView;
  */
 public class GlideEngine implements ImageEngine {
 
+    /**
+     * 列表缩略图边长，低内存配置下会调小
+     */
+    private int gridSize = 200;
+
     /**
      * 加载图片
      *
@@ -207,13 +212,22 @@ public class GlideEngine implements ImageEngine {
     public void loadGridImage(@NonNull Context context, @NonNull String url, @NonNull ImageView imageView) {
         Glide.with(context)
                 .load(url)
-                .override(200, 200)
+                .override(gridSize, gridSize)
                 .centerCrop()
                 .apply(new RequestOptions().placeholder(R.drawable.picture_image_placeholder))
                 .into(imageView);
     }
 
 
+    /**
+     * 设置列表缩略图边长
+     *
+     * @param gridSize 边长，单位px
+     */
+    void setGridSize(int gridSize) {
+        this.gridSize = gridSize;
+    }
+
     private GlideEngine() {
     }
 
@@ -229,4 +243,21 @@ public class GlideEngine implements ImageEngine {
         }
         return instance;
     }
+
+    private static Boolean available;
+
+    /**
+     * 插件以compileOnly依赖Glide，宿主应用未引入Glide时返回false，此时使用LiteImageEngine
+     */
+    static boolean isAvailable() {
+        if (available == null) {
+            try {
+                Class.forName("com.bumptech.glide.Glide");
+                available = true;
+            } catch (ClassNotFoundException e) {
+                available = false;
+            }
+        }
+        return available;
+    }
 }
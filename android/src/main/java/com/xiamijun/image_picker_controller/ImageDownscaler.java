@@ -0,0 +1,236 @@
+package com.xiamijun.image_picker_controller;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Area-averaging downscaler, run over rows in parallel.
+ *
+ * <p>{@code createScaledBitmap} samples the nearest or the four nearest source pixels, which
+ * aliases once the image shrinks by more than half. Here the image is first halved with 2x2
+ * averaging while it is at least twice the target, then each output pixel averages the source
+ * pixels it covers, weighted by overlap. Channels are weighted by alpha so transparent pixels do
+ * not darken edges.
+ *
+ * <p>Rows are split across a {@link ForkJoinPool} on API 21+, and processed on the calling thread
+ * below that.
+ */
+class ImageDownscaler {
+  // Rows per fork-join leaf; small enough to balance, large enough to amortise the task.
+  private static final int ROWS_PER_TASK = 32;
+
+  private static ForkJoinPool pool;
+
+  private ImageDownscaler() {}
+
+  /** Returns bmp scaled down to width x height; returns bmp itself when no scaling is needed. */
+  static Bitmap downscale(Bitmap bmp, int width, int height) {
+    int sourceWidth = bmp.getWidth();
+    int sourceHeight = bmp.getHeight();
+    if (width >= sourceWidth && height >= sourceHeight) {
+      return bmp;
+    }
+    width = Math.max(1, Math.min(width, sourceWidth));
+    height = Math.max(1, Math.min(height, sourceHeight));
+    int[] pixels = new int[sourceWidth * sourceHeight];
+    bmp.getPixels(pixels, 0, sourceWidth, 0, 0, sourceWidth, sourceHeight);
+
+    while (sourceWidth >= width * 2 && sourceHeight >= height * 2) {
+      int halfWidth = sourceWidth / 2;
+      int halfHeight = sourceHeight / 2;
+      int[] half = new int[halfWidth * halfHeight];
+      run(new HalvePass(pixels, sourceWidth, half, halfWidth), halfHeight);
+      pixels = half;
+      sourceWidth = halfWidth;
+      sourceHeight = halfHeight;
+    }
+    if (sourceWidth != width || sourceHeight != height) {
+      int[] output = new int[width * height];
+      run(new AreaPass(pixels, sourceWidth, sourceHeight, output, width, height), height);
+      pixels = output;
+    }
+
+    Bitmap result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    result.setPixels(pixels, 0, width, 0, 0, width, height);
+    result.setHasAlpha(bmp.hasAlpha());
+    return result;
+  }
+
+  private static void run(RowPass pass, int rows) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+        && rows > ROWS_PER_TASK
+        && Runtime.getRuntime().availableProcessors() > 1) {
+      runParallel(pass, rows);
+    } else {
+      pass.rows(0, rows);
+    }
+  }
+
+  @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+  private static void runParallel(RowPass pass, int rows) {
+    ForkJoinPool forkJoinPool;
+    synchronized (ImageDownscaler.class) {
+      if (pool == null) {
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+      }
+      forkJoinPool = pool;
+    }
+    forkJoinPool.invoke(new RowTask(pass, 0, rows));
+  }
+
+  private interface RowPass {
+    /** Computes output rows [from, to). */
+    void rows(int from, int to);
+  }
+
+  @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+  private static class RowTask extends RecursiveAction {
+    private final RowPass pass;
+    private final int from;
+    private final int to;
+
+    RowTask(RowPass pass, int from, int to) {
+      this.pass = pass;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= ROWS_PER_TASK) {
+        pass.rows(from, to);
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      invokeAll(new RowTask(pass, from, middle), new RowTask(pass, middle, to));
+    }
+  }
+
+  /** Averages each 2x2 block; a trailing odd row or column is dropped. */
+  private static class HalvePass implements RowPass {
+    private final int[] source;
+    private final int sourceWidth;
+    private final int[] output;
+    private final int outputWidth;
+
+    HalvePass(int[] source, int sourceWidth, int[] output, int outputWidth) {
+      this.source = source;
+      this.sourceWidth = sourceWidth;
+      this.output = output;
+      this.outputWidth = outputWidth;
+    }
+
+    @Override
+    public void rows(int from, int to) {
+      for (int y = from; y < to; y++) {
+        int top = 2 * y * sourceWidth;
+        int bottom = top + sourceWidth;
+        int out = y * outputWidth;
+        for (int x = 0; x < outputWidth; x++) {
+          int i = 2 * x;
+          output[out + x] =
+              average4(
+                  source[top + i], source[top + i + 1], source[bottom + i], source[bottom + i + 1]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Box filter with fractional coverage. After halving the scale is below 2 on at least one axis,
+   * so each output pixel usually covers no more than 3x3 source pixels.
+   */
+  private static class AreaPass implements RowPass {
+    private final int[] source;
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private final int[] output;
+    private final int outputWidth;
+    private final double scaleX;
+    private final double scaleY;
+
+    AreaPass(
+        int[] source,
+        int sourceWidth,
+        int sourceHeight,
+        int[] output,
+        int outputWidth,
+        int outputHeight) {
+      this.source = source;
+      this.sourceWidth = sourceWidth;
+      this.sourceHeight = sourceHeight;
+      this.output = output;
+      this.outputWidth = outputWidth;
+      this.scaleX = (double) sourceWidth / outputWidth;
+      this.scaleY = (double) sourceHeight / outputHeight;
+    }
+
+    @Override
+    public void rows(int from, int to) {
+      for (int y = from; y < to; y++) {
+        double y0 = y * scaleY;
+        double y1 = Math.min(sourceHeight, y0 + scaleY);
+        for (int x = 0; x < outputWidth; x++) {
+          double x0 = x * scaleX;
+          double x1 = Math.min(sourceWidth, x0 + scaleX);
+          double a = 0;
+          double r = 0;
+          double g = 0;
+          double b = 0;
+          double area = 0;
+          for (int sy = (int) y0; sy < y1; sy++) {
+            double wy = Math.min(y1, sy + 1) - Math.max(y0, sy);
+            int row = sy * sourceWidth;
+            for (int sx = (int) x0; sx < x1; sx++) {
+              double weight = wy * (Math.min(x1, sx + 1) - Math.max(x0, sx));
+              int pixel = source[row + sx];
+              double alpha = (pixel >>> 24) * weight;
+              a += alpha;
+              r += ((pixel >> 16) & 0xff) * alpha;
+              g += ((pixel >> 8) & 0xff) * alpha;
+              b += (pixel & 0xff) * alpha;
+              area += weight;
+            }
+          }
+          output[y * outputWidth + x] = a == 0 ? 0 : pack(a / area, r / a, g / a, b / a);
+        }
+      }
+    }
+  }
+
+  private static int average4(int p0, int p1, int p2, int p3) {
+    int a0 = p0 >>> 24;
+    int a1 = p1 >>> 24;
+    int a2 = p2 >>> 24;
+    int a3 = p3 >>> 24;
+    int a = a0 + a1 + a2 + a3;
+    if (a == 0) {
+      return 0;
+    }
+    int r =
+        a0 * ((p0 >> 16) & 0xff)
+            + a1 * ((p1 >> 16) & 0xff)
+            + a2 * ((p2 >> 16) & 0xff)
+            + a3 * ((p3 >> 16) & 0xff);
+    int g =
+        a0 * ((p0 >> 8) & 0xff)
+            + a1 * ((p1 >> 8) & 0xff)
+            + a2 * ((p2 >> 8) & 0xff)
+            + a3 * ((p3 >> 8) & 0xff);
+    int b = a0 * (p0 & 0xff) + a1 * (p1 & 0xff) + a2 * (p2 & 0xff) + a3 * (p3 & 0xff);
+    int half = a >> 1;
+    return ((a + 2) >> 2) << 24 | ((r + half) / a) << 16 | ((g + half) / a) << 8 | (b + half) / a;
+  }
+
+  private static int pack(double a, double r, double g, double b) {
+    return clamp(a) << 24 | clamp(r) << 16 | clamp(g) << 8 | clamp(b);
+  }
+
+  private static int clamp(double value) {
+    return Math.max(0, Math.min(255, (int) Math.round(value)));
+  }
+}
@@ -6,6 +6,7 @@ package com.xiamijun.image_picker_controller;
 
 import android.app.Activity;
 import android.app.Application;
+import android.content.Context;
 import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
@@ -18,12 +19,15 @@ import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleOwner;
 
 import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
 
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
 import io.flutter.embedding.engine.plugins.activity.ActivityAware;
 import io.flutter.embedding.engine.plugins.activity.ActivityPluginBinding;
 import io.flutter.embedding.engine.plugins.lifecycle.FlutterLifecycleAdapter;
 import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.PluginRegistry;
@@ -100,15 +104,50 @@ public class ImagePickerControllerPlugin
   static final String METHOD_CALL_TAKE_IMAGE = "take_image";
 
   private static final String METHOD_CALL_RETRIEVE = "retrieve";
+  // 自定义相册：查询相册列表及分页查询资源
+  private static final String METHOD_CALL_GET_ALBUMS = "getAlbums";
+  private static final String METHOD_CALL_GET_ASSET_PAGE = "getAssetPage";
+  // 增量获取媒体库变化
+  private static final String METHOD_CALL_GET_MEDIA_CHANGES = "getMediaChanges";
+  // 预加载相册首屏
+  private static final String METHOD_CALL_PREWARM = "prewarm";
+  private static final String METHOD_CALL_CANCEL_PREWARM = "cancelPrewarm";
+  // 视频缩略图条
+  private static final String METHOD_CALL_GET_VIDEO_STORYBOARD = "getVideoStoryboard";
+  // 处理状态（并发数、内存压力等）
+  private static final String METHOD_CALL_GET_PROCESSING_METRICS = "getProcessingMetrics";
+  // 处理优先级，按源文件路径
+  private static final String METHOD_CALL_SET_PROCESSING_PRIORITIES = "setProcessingPriorities";
+  // 用户选择过程中提前处理
+  private static final String METHOD_CALL_UPDATE_SELECTION = "updateSelection";
+  // 不打开相册，直接处理图片
+  private static final String METHOD_CALL_PROCESS_BATCH = "processBatch";
+  // 按需获取句柄对应的文件或字节
+  private static final String METHOD_CALL_MATERIALIZE_ASSET = "materializeAsset";
   private static final int CAMERA_DEVICE_FRONT = 1;
   private static final int CAMERA_DEVICE_REAR = 0;
   private static final String CHANNEL = "com.xiamijun.image_picker_controller";
+  private static final String MEDIA_CHANGES_CHANNEL = CHANNEL + "/media_changes";
+  private static final String PROCESSING_EVENTS_CHANNEL = CHANNEL + "/processing_events";
 
   private static final int SOURCE_CAMERA = 0;
   private static final int SOURCE_GALLERY = 1;
 
   private MethodChannel channel;
+  private EventChannel mediaChangesChannel;
+  private EventChannel processingEventsChannel;
+  private ProcessingScheduler processingScheduler;
+  private MemoryBudget memoryBudget;
+  private MemoryPressureMonitor memoryPressureMonitor;
+  private PowerStateMonitor powerStateMonitor;
+  private SpeculativeProcessor speculativeProcessor;
+  private BatchProcessor batchProcessor;
+  private AssetMaterializer assetMaterializer;
   private ImagePickerDelegate delegate;
+  private MediaStoreQuery mediaStoreQuery;
+  private MediaChangeObserver mediaChangeObserver;
+  // Created on the first prewarm call only.
+  private PickerPrewarmer pickerPrewarmer;
   private FlutterPluginBinding pluginBinding;
   private ActivityPluginBinding activityBinding;
   private Application application;
@@ -154,6 +193,8 @@ public class ImagePickerControllerPlugin
   @Override
   public void onDetachedFromEngine(FlutterPluginBinding binding) {
     pluginBinding = null;
+    // Kept past a config change that was never followed by a reattach.
+    disposeMediaLibrary();
   }
 
   @Override
@@ -170,11 +211,14 @@ public class ImagePickerControllerPlugin
   @Override
   public void onDetachedFromActivity() {
     tearDown();
+    disposeMediaLibrary();
   }
 
   @Override
   public void onDetachedFromActivityForConfigChanges() {
-    onDetachedFromActivity();
+    // The media library outlives the activity, so the change feed stays registered and keeps the
+    // deletes it tracked across the recreation.
+    tearDown();
   }
 
   @Override
@@ -190,9 +234,31 @@ public class ImagePickerControllerPlugin
       final ActivityPluginBinding activityBinding) {
     this.activity = activity;
     this.application = application;
-    this.delegate = constructDelegate(activity);
+    this.processingScheduler = new ProcessingScheduler();
+    this.memoryBudget = new MemoryBudget(activity);
+    this.memoryPressureMonitor = new MemoryPressureMonitor(processingScheduler, memoryBudget);
+    application.registerComponentCallbacks(memoryPressureMonitor);
+    this.powerStateMonitor = new PowerStateMonitor(activity, processingScheduler);
+    powerStateMonitor.start();
+    final ProcessingEvents processingEvents = new ProcessingEvents();
+    this.delegate =
+        constructDelegate(activity, processingScheduler, memoryBudget, processingEvents);
+    this.assetMaterializer = new AssetMaterializer(activity, processingScheduler);
+    if (mediaStoreQuery == null) {
+      Context context = activity.getApplicationContext();
+      this.mediaStoreQuery = new MediaStoreQuery(context);
+      this.mediaChangeObserver =
+          new MediaChangeObserver(context.getContentResolver(), mediaStoreQuery);
+      mediaStoreQuery.setAlbumIndexListener(mediaChangeObserver);
+      // Refresh the persisted album index (if any) before anyone asks for it.
+      mediaStoreQuery.reconcileAlbumIndex();
+    }
     channel = new MethodChannel(messenger, CHANNEL);
     channel.setMethodCallHandler(this);
+    mediaChangesChannel = new EventChannel(messenger, MEDIA_CHANGES_CHANNEL);
+    mediaChangesChannel.setStreamHandler(mediaChangeObserver);
+    processingEventsChannel = new EventChannel(messenger, PROCESSING_EVENTS_CHANNEL);
+    processingEventsChannel.setStreamHandler(processingEvents);
     observer = new LifeCycleObserver(activity);
     if (registrar != null) {
       // V1 embedding setup for activity listeners.
@@ -214,21 +280,82 @@ public class ImagePickerControllerPlugin
     activityBinding = null;
     lifecycle.removeObserver(observer);
     lifecycle = null;
+    delegate.cancelQueuedCalls();
     delegate = null;
+    speculativeProcessor.clear();
+    speculativeProcessor = null;
+    batchProcessor = null;
+    assetMaterializer = null;
+    if (pickerPrewarmer != null) {
+      pickerPrewarmer.cancel();
+      pickerPrewarmer = null;
+    }
     channel.setMethodCallHandler(null);
     channel = null;
+    mediaChangesChannel.setStreamHandler(null);
+    mediaChangesChannel = null;
+    processingEventsChannel.setStreamHandler(null);
+    processingEventsChannel = null;
+    application.unregisterComponentCallbacks(memoryPressureMonitor);
+    memoryPressureMonitor.dispose();
+    memoryPressureMonitor = null;
+    memoryBudget = null;
+    powerStateMonitor.dispose();
+    powerStateMonitor = null;
+    // Lets work already queued finish.
+    processingScheduler.shutdown();
+    processingScheduler = null;
     application.unregisterActivityLifecycleCallbacks(observer);
     application = null;
   }
 
-  private final ImagePickerDelegate constructDelegate(final Activity setupActivity) {
+  /** Stops the media change feed and the media query thread, once no activity will come back. */
+  private void disposeMediaLibrary() {
+    if (mediaStoreQuery == null) {
+      return;
+    }
+    mediaChangeObserver.dispose();
+    mediaChangeObserver = null;
+    mediaStoreQuery.dispose();
+    mediaStoreQuery = null;
+  }
+
+  private final ImagePickerDelegate constructDelegate(
+      final Activity setupActivity,
+      final ProcessingScheduler processingScheduler,
+      final MemoryBudget memoryBudget,
+      final ProcessingEvents processingEvents) {
     final ImagePickerCache cache = new ImagePickerCache(setupActivity);
 
     final File externalFilesDirectory =
         setupActivity.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
     final ExifDataCopier exifDataCopier = new ExifDataCopier();
-    final ImageResizer imageResizer = new ImageResizer(externalFilesDirectory, exifDataCopier);
-    return new ImagePickerDelegate(setupActivity, externalFilesDirectory, imageResizer, cache);
+    final ImageResizer imageResizer =
+        new ImageResizer(externalFilesDirectory, exifDataCopier, memoryBudget);
+    final VideoTranscoder videoTranscoder = new VideoTranscoder(externalFilesDirectory);
+    final VideoTrimmer videoTrimmer = new VideoTrimmer(externalFilesDirectory);
+    final VideoStoryboard videoStoryboard = new VideoStoryboard(setupActivity.getCacheDir());
+    speculativeProcessor =
+        new SpeculativeProcessor(setupActivity, imageResizer, processingScheduler, new FileUtils());
+    batchProcessor =
+        new BatchProcessor(
+            setupActivity,
+            imageResizer,
+            processingScheduler,
+            processingEvents,
+            speculativeProcessor,
+            new FileUtils());
+    return new ImagePickerDelegate(
+        setupActivity,
+        externalFilesDirectory,
+        imageResizer,
+        videoTranscoder,
+        videoTrimmer,
+        videoStoryboard,
+        processingScheduler,
+        processingEvents,
+        speculativeProcessor,
+        cache);
   }
 
   // MethodChannel.Result wrapper that responds on the platform thread.
@@ -307,8 +434,65 @@ public class ImagePickerControllerPlugin
       case METHOD_CALL_RETRIEVE:
         delegate.retrieveLostImage(result);
         break;
+      case METHOD_CALL_GET_ALBUMS:
+        mediaStoreQuery.getAlbums(call, result);
+        break;
+      case METHOD_CALL_GET_ASSET_PAGE:
+        mediaStoreQuery.getAssetPage(call, result);
+        break;
+      case METHOD_CALL_GET_MEDIA_CHANGES:
+        mediaChangeObserver.getMediaChanges(call, result);
+        break;
+      case METHOD_CALL_PREWARM:
+        if (pickerPrewarmer == null) {
+          pickerPrewarmer = new PickerPrewarmer(activity, mediaStoreQuery);
+        }
+        pickerPrewarmer.prewarm(call, result);
+        break;
+      case METHOD_CALL_CANCEL_PREWARM:
+        if (pickerPrewarmer != null) {
+          pickerPrewarmer.cancel();
+        }
+        result.success(null);
+        break;
+      case METHOD_CALL_GET_VIDEO_STORYBOARD:
+        delegate.getVideoStoryboard(call, result);
+        break;
+      case METHOD_CALL_GET_PROCESSING_METRICS:
+        result.success(getProcessingMetrics());
+        break;
+      case METHOD_CALL_SET_PROCESSING_PRIORITIES:
+        Map<String, Integer> priorities = call.argument("priorities");
+        if (priorities == null) {
+          result.error("invalid_arguments", "priorities is required", null);
+          break;
+        }
+        processingScheduler.setPriorities(priorities);
+        result.success(null);
+        break;
+      case METHOD_CALL_UPDATE_SELECTION:
+        speculativeProcessor.updateSelection(call, result);
+        break;
+      case METHOD_CALL_PROCESS_BATCH:
+        batchProcessor.processBatch(call, result);
+        break;
+      case METHOD_CALL_MATERIALIZE_ASSET:
+        assetMaterializer.materialize(call, result);
+        break;
       default:
         throw new IllegalArgumentException("Unknown method " + call.method);
     }
   }
+
+  private Map<String, Object> getProcessingMetrics() {
+    Map<String, Object> metrics = new HashMap<>();
+    processingScheduler.putMetrics(metrics);
+    memoryPressureMonitor.putMetrics(metrics);
+    powerStateMonitor.putMetrics(metrics);
+    speculativeProcessor.putMetrics(metrics);
+    metrics.put("memoryBudgetBytes", memoryBudget.capacity());
+    metrics.put("memoryBudgetUsedBytes", memoryBudget.used());
+    metrics.put("sampleSizeFactor", memoryBudget.sampleSizeFactor());
+    return metrics;
+  }
 }
@@ -18,21 +18,28 @@ import android.os.Build;
 import android.provider.MediaStore;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.FileProvider;
 
 import com.luck.picture.lib.PictureSelector;
 import com.luck.picture.lib.config.PictureMimeType;
+import com.luck.picture.lib.engine.ImageEngine;
 import com.luck.picture.lib.entity.LocalMedia;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
@@ -52,7 +59,9 @@ enum CameraDevice {
  *
  * <p>1. Check for an existing {@link #pendingResult}. If a previous pendingResult exists, this
  * means that the chooseImageFromGallery() or takeImageWithCamera() method was called at least
- * twice. In this case, stop executing and finish with an error.
+ * twice. In this case, stop executing and finish with an error. Only calls that own the picker UI
+ * are exclusive; background calls such as {@link #retrieveLostImage} wait in a bounded queue until
+ * the pending result is cleared, and fail with {@code queue_full} when it is full.
  *
  * <p>2. Check that a required runtime permission has been granted. The chooseImageFromGallery()
  * method checks if the {@link Manifest.permission#READ_EXTERNAL_STORAGE} permission has been
@@ -102,6 +111,8 @@ public class ImagePickerDelegate
   static final int REQUEST_EXTERNAL_VIDEO_STORAGE_PERMISSION = 2354;
   @VisibleForTesting
   static final int REQUEST_CAMERA_VIDEO_PERMISSION = 2355;
+  // Background calls that may wait for a pick in progress.
+  private static final int MAX_QUEUED_CALLS = 16;
 
 
   @VisibleForTesting
@@ -110,6 +121,12 @@ public class ImagePickerDelegate
   private final Activity activity;
   private final File externalFilesDirectory;
   private final ImageResizer imageResizer;
+  private final VideoTranscoder videoTranscoder;
+  private final VideoTrimmer videoTrimmer;
+  private final VideoStoryboard videoStoryboard;
+  private final ProcessingScheduler processingScheduler;
+  private final ProcessingEvents processingEvents;
+  private final SpeculativeProcessor speculativeProcessor;
   private final ImagePickerCache cache;
   private final PermissionManager permissionManager;
   private final IntentResolver intentResolver;
@@ -142,16 +159,40 @@ public class ImagePickerDelegate
   private Uri pendingCameraMediaUri;
   private MethodChannel.Result pendingResult;
   private MethodCall methodCall;
+  // Background calls waiting for pendingResult to clear; only touched on the main thread.
+  private final ArrayDeque<QueuedCall> queuedCalls = new ArrayDeque<>();
+
+  private static class QueuedCall {
+    final Runnable call;
+    final MethodChannel.Result result;
+
+    QueuedCall(Runnable call, MethodChannel.Result result) {
+      this.call = call;
+      this.result = result;
+    }
+  }
 
   public ImagePickerDelegate(
       final Activity activity,
       final File externalFilesDirectory,
       final ImageResizer imageResizer,
+      final VideoTranscoder videoTranscoder,
+      final VideoTrimmer videoTrimmer,
+      final VideoStoryboard videoStoryboard,
+      final ProcessingScheduler processingScheduler,
+      final ProcessingEvents processingEvents,
+      final SpeculativeProcessor speculativeProcessor,
       final ImagePickerCache cache) {
     this(
         activity,
         externalFilesDirectory,
         imageResizer,
+        videoTranscoder,
+        videoTrimmer,
+        videoStoryboard,
+        processingScheduler,
+        processingEvents,
+        speculativeProcessor,
         null,
         null,
         cache,
@@ -210,6 +251,12 @@ public class ImagePickerDelegate
       final Activity activity,
       final File externalFilesDirectory,
       final ImageResizer imageResizer,
+      final VideoTranscoder videoTranscoder,
+      final VideoTrimmer videoTrimmer,
+      final VideoStoryboard videoStoryboard,
+      final ProcessingScheduler processingScheduler,
+      final ProcessingEvents processingEvents,
+      final SpeculativeProcessor speculativeProcessor,
       final MethodChannel.Result result,
       final MethodCall methodCall,
       final ImagePickerCache cache,
@@ -220,6 +267,12 @@ public class ImagePickerDelegate
     this.activity = activity;
     this.externalFilesDirectory = externalFilesDirectory;
     this.imageResizer = imageResizer;
+    this.videoTranscoder = videoTranscoder;
+    this.videoTrimmer = videoTrimmer;
+    this.videoStoryboard = videoStoryboard;
+    this.processingScheduler = processingScheduler;
+    this.processingEvents = processingEvents;
+    this.speculativeProcessor = speculativeProcessor;
     this.fileProviderName = activity.getPackageName() + ".flutter.image_provider";
     this.pendingResult = result;
     this.methodCall = methodCall;
@@ -251,26 +304,98 @@ public class ImagePickerDelegate
     }
   }
 
-  void retrieveLostImage(MethodChannel.Result result) {
-    Map<String, Object> resultMap = cache.getCacheMap();
-    String path = (String) resultMap.get(cache.MAP_KEY_PATH);
-    if (path != null) {
-      Double maxWidth = (Double) resultMap.get(cache.MAP_KEY_MAX_WIDTH);
-      Double maxHeight = (Double) resultMap.get(cache.MAP_KEY_MAX_HEIGHT);
-      int imageQuality =
-          resultMap.get(cache.MAP_KEY_IMAGE_QUALITY) == null
-              ? 100
-              : (int) resultMap.get(cache.MAP_KEY_IMAGE_QUALITY);
+  /** Retrieves the lost result, once any pick in progress has finished writing it. */
+  void retrieveLostImage(final MethodChannel.Result result) {
+    runWhenIdle(
+        new Runnable() {
+          @Override
+          public void run() {
+            retrieveLostImageNow(result);
+          }
+        },
+        result);
+  }
 
-      String newPath = imageResizer.resizeImageIfNeeded(path, maxWidth, maxHeight, imageQuality);
-      resultMap.put(cache.MAP_KEY_PATH, newPath);
+  private void retrieveLostImageNow(final MethodChannel.Result result) {
+    final Map<String, Object> resultMap = cache.getCacheMap();
+    cache.clear();
+    final String path = (String) resultMap.get(cache.MAP_KEY_PATH);
+    if (path == null) {
+      result.success(resultMap.isEmpty() ? null : resultMap);
+      return;
     }
-    if (resultMap.isEmpty()) {
-      result.success(null);
-    } else {
-      result.success(resultMap);
+    final Double maxWidth = (Double) resultMap.get(cache.MAP_KEY_MAX_WIDTH);
+    final Double maxHeight = (Double) resultMap.get(cache.MAP_KEY_MAX_HEIGHT);
+    final int imageQuality =
+        resultMap.get(cache.MAP_KEY_IMAGE_QUALITY) == null
+            ? 100
+            : (int) resultMap.get(cache.MAP_KEY_IMAGE_QUALITY);
+    // 缩放可能等待MemoryBudget，不能在主线程执行
+    processingScheduler.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            String newPath;
+            try {
+              newPath = imageResizer.resizeImageIfNeeded(path, maxWidth, maxHeight, imageQuality);
+            } catch (RuntimeException e) {
+              Log.e("ImagePickerDelegate", "Resizing failed, returning the original image", e);
+              newPath = path;
+            }
+            resultMap.put(cache.MAP_KEY_PATH, newPath);
+            processingScheduler.runOnMainThread(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    result.success(resultMap);
+                  }
+                });
+          }
+        });
+  }
+
+  /**
+   * Extracts the storyboard of an already picked video. Does not own the picker UI, so it runs
+   * alongside any pick in progress.
+   */
+  void getVideoStoryboard(MethodCall call, final MethodChannel.Result result) {
+    final String path = call.argument("path");
+    final VideoStoryboard.Options options =
+        VideoStoryboard.Options.fromMap((Map<String, Object>) call.arguments());
+    if (path == null || !options.isEnabled()) {
+      result.error("invalid_arguments", "path and a positive frameCount are required", null);
+      return;
     }
-    cache.clear();
+    processingScheduler.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            Map<String, Object> storyboard = null;
+            Exception error = null;
+            MediaMetadataRetriever mediaRetriever = new MediaMetadataRetriever();
+            try {
+              mediaRetriever.setDataSource(path);
+              storyboard = videoStoryboard.extract(path, mediaRetriever, options);
+            } catch (IOException | RuntimeException e) {
+              error = e;
+            } finally {
+              mediaRetriever.release();
+            }
+            final Map<String, Object> finalStoryboard = storyboard;
+            final Exception finalError = error;
+            processingScheduler.runOnMainThread(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    if (finalError != null) {
+                      result.error("storyboard_failed", finalError.getMessage(), null);
+                    } else {
+                      result.success(finalStoryboard);
+                    }
+                  }
+                });
+          }
+        });
   }
 
   public void chooseVideoFromGallery(MethodCall methodCall, MethodChannel.Result result) {
@@ -299,9 +424,9 @@ public class ImagePickerDelegate
 //    Log.d("config===", "===" + config);
     PictureSelector.create(activity)
             .openGallery(PictureMimeType.ofVideo())
-            .imageEngine(GlideEngine.createGlideEngine())
+            .imageEngine(createImageEngine(config))
             .isGif(false) // 是否显示GIF图片
-            .isAndroidQTransform(true) // 是否需要处理Android Q 拷贝至应用沙盒的操作，只针对compress(false); && .isEnableCrop(false);有效,默认处理
+            .isAndroidQTransform(!isHandleMode(config)) // 是否需要处理Android Q 拷贝至应用沙盒的操作，只针对compress(false); && .isEnableCrop(false);有效,默认处理；句柄模式不拷贝
             .maxSelectNum(config.maxImageCount) // 最大图片选择数量
             .isOriginalImageControl(config.allowPickingOriginalPhoto) // 是否显示原图控制按钮，如果设置为true则用户可以自由选择是否使用原图，压缩、裁剪功能将会失效
             .isCamera(config.allowTakeVideo) // 是否显示拍照按钮
@@ -313,7 +438,7 @@ public class ImagePickerDelegate
             .isCompress(false) // 是否压缩
 //            .compressQuality(80) // 图片压缩后输出质量 0 ~ 100
             .maxVideoSelectNum(config.maxImageCount) // 视频最大选择数量
-            .videoMaxSecond(config.videoMaxDuration) // 查询多少秒以内的视频
+            .videoMaxSecond(config.trimToMaxDuration ? 0 : config.videoMaxDuration) // 查询多少秒以内的视频，裁剪模式下不过滤
             .recordVideoSecond(config.videoMaxDuration) // 录制视频秒数
 //            .videoQuality(1) // 视频录制的质量 0 or 1
             .cutOutQuality(100) // 裁剪输出质量
@@ -390,9 +515,9 @@ public class ImagePickerDelegate
 //    Log.d("config===", "===" + config);
     PictureSelector.create(activity)
             .openGallery(PictureMimeType.ofImage())
-            .imageEngine(GlideEngine.createGlideEngine())
+            .imageEngine(createImageEngine(config))
             .isGif(false) // 是否显示GIF图片
-            .isAndroidQTransform(true) // 是否需要处理Android Q 拷贝至应用沙盒的操作，只针对compress(false); && .isEnableCrop(false);有效,默认处理
+            .isAndroidQTransform(!isHandleMode(config)) // 是否需要处理Android Q 拷贝至应用沙盒的操作，只针对compress(false); && .isEnableCrop(false);有效,默认处理；句柄模式不拷贝
             .maxSelectNum(config.maxImageCount) // 最大图片选择数量
             .isOriginalImageControl(config.allowPickingOriginalPhoto) // 是否显示原图控制按钮，如果设置为true则用户可以自由选择是否使用原图，压缩、裁剪功能将会失效
             .isCamera(config.allowTakePicture) // 是否显示拍照按钮
@@ -456,9 +581,9 @@ public class ImagePickerDelegate
     // 单独拍照
     PictureSelector.create(activity)
             .openCamera(PictureMimeType.ofImage())
-            .imageEngine(GlideEngine.createGlideEngine())
+            .imageEngine(createImageEngine(config))
             .isGif(false) // 是否显示GIF图片
-            .isAndroidQTransform(true) // 是否需要处理Android Q 拷贝至应用沙盒的操作，只针对compress(false); && .isEnableCrop(false);有效,默认处理
+            .isAndroidQTransform(!isHandleMode(config)) // 是否需要处理Android Q 拷贝至应用沙盒的操作，只针对compress(false); && .isEnableCrop(false);有效,默认处理；句柄模式不拷贝
             .maxSelectNum(config.maxImageCount) // 最大图片选择数量
             .isOriginalImageControl(config.allowPickingOriginalPhoto) // 是否显示原图控制按钮，如果设置为true则用户可以自由选择是否使用原图，压缩、裁剪功能将会失效
             .isCamera(config.allowTakePicture) // 是否显示拍照按钮
@@ -481,6 +606,22 @@ public class ImagePickerDelegate
             .forResult(REQUEST_CODE_TAKE_IMAGE_WITH_CAMERA);
   }
 
+  /**
+   * The engine config asks for, with grid thumbnails sized for its processing profile. Apps that
+   * do not ship Glide always get the lite engine.
+   */
+  private ImageEngine createImageEngine(PickerConfiguration config) {
+    int gridSize = ProcessingProfile.forConfiguration(config, activity).thumbnailSize;
+    if (config.useLiteImageEngine || !GlideEngine.isAvailable()) {
+      LiteImageEngine engine = LiteImageEngine.createLiteImageEngine();
+      engine.setGridSize(gridSize);
+      return engine;
+    }
+    GlideEngine engine = GlideEngine.createGlideEngine();
+    engine.setGridSize(gridSize);
+    return engine;
+  }
+
   private File createTemporaryWritableImageFile() {
     return createTemporaryWritableFile(".jpg");
   }
@@ -665,6 +806,30 @@ public class ImagePickerDelegate
     result.error("already_active", "Image picker is already active", null);
   }
 
+  /**
+   * Runs a background call now when no call owns the picker, else queues it until {@link
+   * #clearMethodCallAndResult}. Fails with {@code queue_full} once {@link #MAX_QUEUED_CALLS} wait.
+   */
+  private void runWhenIdle(Runnable call, MethodChannel.Result result) {
+    if (pendingResult == null) {
+      call.run();
+      return;
+    }
+    if (queuedCalls.size() >= MAX_QUEUED_CALLS) {
+      result.error("queue_full", "Too many calls are waiting for the image picker", null);
+      return;
+    }
+    queuedCalls.add(new QueuedCall(call, result));
+  }
+
+  /** Fails queued calls that will never run, as when the plugin detaches. */
+  void cancelQueuedCalls() {
+    QueuedCall queued;
+    while ((queued = queuedCalls.poll()) != null) {
+      queued.result.error("cancelled", "The image picker was detached", null);
+    }
+  }
+
   private void finishWithError(String errorCode, String errorMessage) {
     if (pendingResult == null) {
       cache.saveResult(null, errorCode, errorMessage);
@@ -677,6 +842,11 @@ public class ImagePickerDelegate
   private void clearMethodCallAndResult() {
     methodCall = null;
     pendingResult = null;
+    // Stops early should a queued call take the picker again.
+    QueuedCall queued;
+    while (pendingResult == null && (queued = queuedCalls.poll()) != null) {
+      queued.call.run();
+    }
   }
 
   private void useFrontCamera(Intent intent) {
@@ -692,11 +862,27 @@ public class ImagePickerDelegate
   }
 
   // 新增
-  private void handleImageResults(List<LocalMedia> mediaList) {
+  private void handleImageResults(final List<LocalMedia> mediaList) {
 //    Log.i("===handleImageResults", "====准备开始遍历======paths: " + mediaList);
-
-
-    List<String> paths = new ArrayList<>();
+    final PickerConfiguration config = currentConfiguration();
+    if (isHandleMode(config)) {
+      finishWithHandles(mediaList);
+      return;
+    }
+    if (mediaList.isEmpty()) {
+      finishWithSuccessPaths(new ArrayList<String>());
+      return;
+    }
+    // 所有图片处理完成后释放
+    final ProcessingProfile profile = acquireProcessingProfile(config);
+    // 每张图片一个后台任务并行缩放，由MemoryBudget控制同时解码的内存，全部完成后回到主线程返回结果
+    // bytes模式下结果为byte[]（不写文件）或超过大小上限时的文件路径
+    final boolean inline = ImageResizer.RESULT_MODE_BYTES.equals(config.resultMode);
+    final Object[] paths = new Object[mediaList.size()];
+    final AtomicInteger remaining = new AtomicInteger(paths.length);
+    // 所有字节结果在同一个回复中返回，总量超过上限后其余结果写入文件
+    final AtomicLong inlineBudget = new AtomicLong(ImageResizer.MAX_TOTAL_INLINE_BYTES);
+    List<String> sourcePaths = new ArrayList<>();
     for (LocalMedia media : mediaList) {
       String path = media.getPath();
       if (media.isCompressed()) {
@@ -709,23 +895,85 @@ public class ImagePickerDelegate
         path = media.getAndroidQToPath();
       }
       Log.i("选择照片", "输出的路径==" + path);
-      paths.add(path);
-//      Log.i("选择照片", "是否压缩:" + media.isCompressed());
-//      Log.i("选择照片", "压缩:" + media.getCompressPath());
-//      Log.i("选择照片", "原图:" + media.getPath());
-//      Log.i("选择照片", "是否裁剪:" + media.isCut());
-//      Log.i("选择照片", "裁剪:" + media.getCutPath());
-//      Log.i("选择照片", "是否开启原图:" + media.isOriginal());
-//      Log.i("选择照片", "原图路径:" + media.getOriginalPath());
-//      Log.i("选择照片", "Android Q 特有Path:" + media.getAndroidQToPath());
-//      Log.i("选择照片", "宽高: " + media.getWidth() + "x" + media.getHeight());
-//      Log.i("选择照片", "Size: " + media.getSize());
+      sourcePaths.add(path);
+    }
+    // 先通知Dart本次处理的源文件，Dart可据此按路径设置优先级（如可见的图片优先）
+    Map<String, Object> started = ProcessingEvents.event(ProcessingEvents.EVENT_BATCH_STARTED);
+    started.put("paths", sourcePaths);
+    processingEvents.send(started);
+    for (int i = 0; i < paths.length; i++) {
+      LocalMedia media = mediaList.get(i);
+      final ImageResizer.Options options = ImageResizer.Options.fromConfiguration(config, profile);
+      if (media.isCut()) {
+        // 已经由裁剪页面裁剪过
+        options.crop = null;
+        options.aspectRatio = null;
+      }
+      final int index = i;
+      final String sourcePath = sourcePaths.get(i);
+      // 用户在Dart相册中选择时已提前处理的结果；裁剪或压缩过的图片不复用
+      final boolean speculative = !media.isCut() && !media.isCompressed();
+      final String pickedPath = media.getPath();
+      processingScheduler.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              String output =
+                  speculative ? speculativeProcessor.take(options, pickedPath, sourcePath) : null;
+              if (output != null) {
+                paths[index] = output;
+              } else if (inline) {
+                paths[index] = resizeImageInline(sourcePath, options, inlineBudget);
+              } else {
+                paths[index] = resizeImage(sourcePath, options);
+              }
+              Map<String, Object> ready =
+                  ProcessingEvents.event(ProcessingEvents.EVENT_IMAGE_READY);
+              ready.put("index", index);
+              ready.put("path", sourcePath);
+              // 字节结果只随最终结果返回一次
+              ready.put("resultPath", paths[index] instanceof String ? paths[index] : null);
+              processingEvents.send(ready);
+              if (remaining.decrementAndGet() == 0) {
+                processingScheduler.releaseProfile(profile);
+                processingScheduler.runOnMainThread(
+                    new Runnable() {
+                      @Override
+                      public void run() {
+                        finishWithSuccessPaths(Arrays.asList(paths));
+                      }
+                    });
+              }
+            }
+          },
+          sourcePath);
     }
-    finishWithSuccessPaths(paths);
   }
 
-  // 新增，用于处理Matisse返回的path数组
-  private void finishWithSuccessPaths(List<String> imagePaths) {
+  /** Returns the resized image, or the original when it already fits or cannot be decoded. */
+  private String resizeImage(String path, ImageResizer.Options options) {
+    try {
+      String resized = imageResizer.resizeImageIfNeeded(path, options);
+      return resized != null ? resized : path;
+    } catch (RuntimeException e) {
+      Log.e("ImagePickerDelegate", "Resizing failed, returning the original image", e);
+      return path;
+    }
+  }
+
+  /** Like {@link #resizeImage}, but returns small results as bytes instead of writing them. */
+  private Object resizeImageInline(
+      String path, ImageResizer.Options options, AtomicLong inlineBudget) {
+    try {
+      Object resized = imageResizer.resizeImageInline(path, options, inlineBudget);
+      return resized != null ? resized : path;
+    } catch (RuntimeException e) {
+      Log.e("ImagePickerDelegate", "Resizing failed, returning the original image", e);
+      return path;
+    }
+  }
+
+  private void finishWithSuccessPaths(List<?> imagePaths) {
 //    if (imagePaths == null) {
 //      return;
 //    }
@@ -734,10 +982,13 @@ public class ImagePickerDelegate
     if (pendingResult == null) {
 //      Log.i("=finishWithSuccessPaths", "=====准备开始遍历=====imagePaths: " + imagePaths);
 
-      for (String imagePath: imagePaths) {
+      for (Object imagePath: imagePaths) {
 //        Log.i("=finishWithSuccessPaths", "=====正在遍历=====imagePath: " + imagePath);
 
-        cache.saveResult(imagePath, null, null);
+        // 字节结果不缓存
+        if (imagePath instanceof String) {
+          cache.saveResult((String) imagePath, null, null);
+        }
       }
       return;
     }
@@ -749,43 +1000,237 @@ public class ImagePickerDelegate
 
   // 新增
   private void handleVideoResults(final List<LocalMedia> mediaList) {
-//    Log.i("===handleImageResults", "====准备开始遍历======paths: " + mediaList);
+    final PickerConfiguration config = currentConfiguration();
+    if (isHandleMode(config)) {
+      finishWithHandles(mediaList);
+      return;
+    }
+    final VideoTranscoder.Options transcodeOptions =
+        VideoTranscoder.Options.fromConfiguration(config);
+    final VideoTrimmer.Options trimOptions = VideoTrimmer.Options.fromConfiguration(config);
+    final VideoStoryboard.Options storyboardOptions =
+        VideoStoryboard.Options.fromConfiguration(config);
+    final VideoCover.Options coverOptions = VideoCover.Options.fromConfiguration(config);
+    final ProcessingProfile profile = acquireProcessingProfile(config);
+    if (!profile.optionalWork) {
+      // 低内存配置下跳过缩略图条
+      storyboardOptions.frameCount = 0;
+    }
+    // 封面提取和转码在后台执行，完成后回到主线程返回结果
+    processingScheduler.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            final List<Map> paths = new ArrayList<Map>();
+            IOException failure = null;
+            try {
+              processVideos(paths);
+            } catch (IOException e) {
+              failure = e;
+            } finally {
+              processingScheduler.releaseProfile(profile);
+            }
+            final IOException finalFailure = failure;
+            processingScheduler.runOnMainThread(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    if (finalFailure != null) {
+                      finishWithError("trim_failed", finalFailure.getMessage());
+                    } else {
+                      finishWithSuccessVideo(paths);
+                    }
+                  }
+                });
+          }
 
-        final List<Map> paths = new ArrayList<Map>();
-        for (LocalMedia media : mediaList) {
-          String path = media.getPath();
-          if (media.isCompressed()) {
-            path = media.getCompressPath();
-          } else if (media.isCut()) {
-            path = media.getCutPath();
-          } else if (media.isOriginal()) {
-            path = media.getOriginalPath();
-          } else if (media.getAndroidQToPath() != null) {
-            path = media.getAndroidQToPath();
+          private void processVideos(List<Map> paths) throws IOException {
+            for (int i = 0; i < mediaList.size(); i++) {
+              LocalMedia media = mediaList.get(i);
+              String path = media.getPath();
+              if (media.isCompressed()) {
+                path = media.getCompressPath();
+              } else if (media.isCut()) {
+                path = media.getCutPath();
+              } else if (media.isOriginal()) {
+                path = media.getOriginalPath();
+              } else if (media.getAndroidQToPath() != null) {
+                path = media.getAndroidQToPath();
+              }
+              Log.i("选择视频", "输出的路径==" + path);
+              final Map<String, Object> asset = new HashMap<>();
+              String originalPath = path;
+              // 先裁剪再转码，减少需要编码的帧
+              if (trimOptions != null) {
+                path = trim(path, trimOptions);
+              }
+              if (transcodeOptions.isEnabled()) {
+                path = transcode(path, i, transcodeOptions);
+              }
+              asset.put("videoPath", path);
+              if (!originalPath.equals(path)) {
+                asset.put("originalVideoPath", originalPath);
+              }
+              // 设备过热或省电模式时，缩略图条推迟生成，完成后通过processing_events发送
+              boolean deferStoryboard =
+                  storyboardOptions.isEnabled() && processingScheduler.isDeferringNonUrgentWork();
+              // 视频封面、元数据和缩略图条，同一次打开文件读取
+              readCoverAndMetadata(
+                  path, coverOptions, deferStoryboard ? null : storyboardOptions, asset);
+              if (deferStoryboard) {
+                asset.put("storyboardDeferred", true);
+                extractStoryboardLater(i, path, storyboardOptions);
+              }
+              paths.add(asset);
+            }
           }
-          Log.i("选择视频", "输出的路径==" + path);
-          final Map asset = new HashMap();
-          asset.put("videoPath", path);
-          // 视频封面
-          MediaMetadataRetriever mediaRetriever = new MediaMetadataRetriever();
-          mediaRetriever.setDataSource(path);
-          Bitmap bitmap = mediaRetriever.getFrameAtTime();
-          String cover = imageResizer.resizeImageFromBitmap(bitmap);
-          asset.put("coverPath", cover);
-          paths.add(asset);
-//      Log.i("选择照片", "是否压缩:" + media.isCompressed());
-//      Log.i("选择照片", "压缩:" + media.getCompressPath());
-//      Log.i("选择照片", "原图:" + media.getPath());
-//      Log.i("选择照片", "是否裁剪:" + media.isCut());
-//      Log.i("选择照片", "裁剪:" + media.getCutPath());
-//      Log.i("选择照片", "是否开启原图:" + media.isOriginal());
-//      Log.i("选择照片", "原图路径:" + media.getOriginalPath());
-//      Log.i("选择照片", "Android Q 特有Path:" + media.getAndroidQToPath());
-//      Log.i("选择照片", "宽高: " + media.getWidth() + "x" + media.getHeight());
-//      Log.i("选择照片", "Size: " + media.getSize());
+        });
+  }
+
+  /** Transcodes on the calling (processing) thread; falls back to the source on failure. */
+  private String transcode(
+      final String path, final int index, VideoTranscoder.Options options) {
+    try {
+      return videoTranscoder.transcodeIfNeeded(
+          path,
+          options,
+          new VideoTranscoder.ProgressListener() {
+            @Override
+            public void onProgress(double progress) {
+              Map<String, Object> event =
+                  ProcessingEvents.event(ProcessingEvents.EVENT_TRANSCODE_PROGRESS);
+              event.put("index", index);
+              event.put("path", path);
+              event.put("progress", progress);
+              processingEvents.send(event);
+            }
+          });
+    } catch (IOException | RuntimeException e) {
+      Log.e("ImagePickerDelegate", "Transcoding failed, returning the original video", e);
+      return path;
+    }
+  }
 
+  /**
+   * Extracts a storyboard as deferrable work and sends it as a processing event, or sends an error
+   * event if the plugin detaches first.
+   */
+  private void extractStoryboardLater(
+      final int index, final String path, final VideoStoryboard.Options options) {
+    processingScheduler.executeDeferrable(
+        new Runnable() {
+          @Override
+          public void run() {
+            Map<String, Object> event = ProcessingEvents.event(ProcessingEvents.EVENT_STORYBOARD);
+            event.put("index", index);
+            event.put("path", path);
+            MediaMetadataRetriever mediaRetriever = new MediaMetadataRetriever();
+            try {
+              mediaRetriever.setDataSource(path);
+              event.put("storyboard", videoStoryboard.extract(path, mediaRetriever, options));
+            } catch (IOException | RuntimeException e) {
+              Log.e("ImagePickerDelegate", "Deferred storyboard failed for " + path, e);
+              event.put("error", e.getMessage());
+            } finally {
+              mediaRetriever.release();
+            }
+            processingEvents.send(event);
+          }
+        },
+        new Runnable() {
+          @Override
+          public void run() {
+            // 插件已卸载，不再生成，通知Dart
+            Map<String, Object> event = ProcessingEvents.event(ProcessingEvents.EVENT_STORYBOARD);
+            event.put("index", index);
+            event.put("path", path);
+            event.put("error", "Processing stopped before the storyboard was extracted");
+            processingEvents.send(event);
+          }
+        });
+  }
+
+  private void readCoverAndMetadata(
+      String path,
+      VideoCover.Options coverOptions,
+      @Nullable VideoStoryboard.Options storyboardOptions,
+      Map<String, Object> asset) {
+    MediaMetadataRetriever mediaRetriever = new MediaMetadataRetriever();
+    FileInputStream input = null;
+    try {
+      input = new FileInputStream(path);
+      mediaRetriever.setDataSource(input.getFD());
+      Bitmap bitmap = VideoCover.frame(mediaRetriever, coverOptions);
+      String cover = imageResizer.resizeImageFromBitmap(bitmap);
+      asset.put("coverPath", cover);
+      VideoMetadata.read(mediaRetriever, input.getFD(), asset);
+      if (storyboardOptions != null && storyboardOptions.isEnabled()) {
+        asset.put("storyboard", videoStoryboard.extract(path, mediaRetriever, storyboardOptions));
+      }
+    } catch (IOException | RuntimeException e) {
+      // setDataSource and the retriever throw RuntimeException on corrupt files.
+      Log.e("ImagePickerDelegate", "Unable to read video " + path, e);
+    } finally {
+      mediaRetriever.release();
+      if (input != null) {
+        try {
+          input.close();
+        } catch (IOException e) {
+          // Ignored, the file was only read.
         }
-        finishWithSuccessVideo(paths);
+      }
+    }
+  }
+
+  /**
+   * Trims on the calling (processing) thread; falls back to the source on failure, unless the
+   * source may be longer than the maximum duration.
+   */
+  private String trim(String path, VideoTrimmer.Options options) throws IOException {
+    try {
+      return videoTrimmer.trimIfNeeded(path, options);
+    } catch (IOException | RuntimeException e) {
+      if (options.enforcesMaxDuration) {
+        // 图库未按时长过滤，不能返回超长的原视频
+        throw new IOException("Unable to trim " + path + " to the maximum duration", e);
+      }
+      Log.e("ImagePickerDelegate", "Trimming failed, returning the original video", e);
+      return path;
+    }
+  }
+
+  private static boolean isHandleMode(PickerConfiguration config) {
+    return AssetMaterializer.RESULT_MODE_HANDLE.equals(config.resultMode);
+  }
+
+  /**
+   * Returns a handle per item, without copying or processing; files are materialized on demand.
+   */
+  private void finishWithHandles(List<LocalMedia> mediaList) {
+    if (pendingResult == null) {
+      // 句柄不缓存，retrieve时无法恢复
+      return;
+    }
+    List<Map<String, Object>> handles = new ArrayList<>();
+    for (LocalMedia media : mediaList) {
+      handles.add(AssetMaterializer.handle(media));
+    }
+    pendingResult.success(handles);
+    clearMethodCallAndResult();
+  }
+
+  /**
+   * Resolves the processing profile of config and applies its concurrency to the scheduler until
+   * {@link ProcessingScheduler#releaseProfile}.
+   */
+  private ProcessingProfile acquireProcessingProfile(PickerConfiguration config) {
+    ProcessingProfile profile = ProcessingProfile.forConfiguration(config, activity);
+    processingScheduler.acquireProfile(profile);
+    return profile;
+  }
+
+  private PickerConfiguration currentConfiguration() {
+    return PickerConfiguration.fromMap(methodCall == null ? null : (Map) methodCall.arguments());
   }
 
   // 新增，用于处理Matisse返回的path数组
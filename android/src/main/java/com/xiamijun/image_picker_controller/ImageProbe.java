@@ -0,0 +1,184 @@
+package com.xiamijun.image_picker_controller;
+
+import android.graphics.BitmapFactory;
+import android.media.ExifInterface;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads format, dimensions, EXIF orientation and file size of an image without decoding pixels.
+ *
+ * <p>The format comes from the leading magic bytes, the dimensions from a bounds-only decode,
+ * which stops after the header, and the orientation from the EXIF block. Used to skip decoding
+ * when an image already satisfies the requested constraints.
+ */
+class ImageProbe {
+  private static final String TAG = "ImageProbe";
+
+  static final String FORMAT_JPEG = "jpeg";
+  static final String FORMAT_PNG = "png";
+  static final String FORMAT_GIF = "gif";
+  static final String FORMAT_WEBP = "webp";
+  static final String FORMAT_HEIF = "heif";
+  static final String FORMAT_BMP = "bmp";
+
+  // Enough for every signature below, including the ISO-BMFF brand of HEIF.
+  static final int HEADER_SIZE = 16;
+
+  @Nullable final String format;
+  final int width;
+  final int height;
+  // ExifInterface.ORIENTATION_* value, ORIENTATION_NORMAL when absent.
+  final int orientation;
+  final long fileSize;
+
+  ImageProbe(
+      @Nullable String format, int width, int height, int orientation, long fileSize) {
+    this.format = format;
+    this.width = width;
+    this.height = height;
+    this.orientation = orientation;
+    this.fileSize = fileSize;
+  }
+
+  /** Returns null when the file cannot be read or is not a decodable image. */
+  @Nullable
+  static ImageProbe probe(String path) {
+    File file = new File(path);
+    byte[] header = new byte[HEADER_SIZE];
+    int length;
+    InputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      length = readFully(in, header);
+    } catch (IOException e) {
+      Log.w(TAG, "Unable to read " + path, e);
+      return null;
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          // Ignored, the file was only read.
+        }
+      }
+    }
+
+    BitmapFactory.Options bounds = new BitmapFactory.Options();
+    bounds.inJustDecodeBounds = true;
+    BitmapFactory.decodeFile(path, bounds);
+    if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+      return null;
+    }
+
+    String format = sniffFormat(header, length);
+    int orientation = ExifInterface.ORIENTATION_NORMAL;
+    if (FORMAT_JPEG.equals(format) || FORMAT_HEIF.equals(format) || FORMAT_WEBP.equals(format)) {
+      try {
+        orientation =
+            new ExifInterface(path)
+                .getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+      } catch (IOException | RuntimeException e) {
+        // Formats the platform ExifInterface does not parse on this API level.
+      }
+    }
+    return new ImageProbe(format, bounds.outWidth, bounds.outHeight, orientation, file.length());
+  }
+
+  /** Whether width and height are swapped once the EXIF orientation is applied. */
+  boolean isTransposed() {
+    return isTransposed(orientation);
+  }
+
+  static boolean isTransposed(int orientation) {
+    return orientation == ExifInterface.ORIENTATION_ROTATE_90
+        || orientation == ExifInterface.ORIENTATION_ROTATE_270
+        || orientation == ExifInterface.ORIENTATION_TRANSPOSE
+        || orientation == ExifInterface.ORIENTATION_TRANSVERSE;
+  }
+
+  /** Identifies an image format from its first bytes, or null when unknown. */
+  @Nullable
+  static String sniffFormat(byte[] header, int length) {
+    if (length >= 3 && u(header[0]) == 0xFF && u(header[1]) == 0xD8 && u(header[2]) == 0xFF) {
+      return FORMAT_JPEG;
+    }
+    if (length >= 8
+        && u(header[0]) == 0x89
+        && header[1] == 'P'
+        && header[2] == 'N'
+        && header[3] == 'G') {
+      return FORMAT_PNG;
+    }
+    if (length >= 6 && header[0] == 'G' && header[1] == 'I' && header[2] == 'F') {
+      return FORMAT_GIF;
+    }
+    if (length >= 12
+        && header[0] == 'R'
+        && header[1] == 'I'
+        && header[2] == 'F'
+        && header[3] == 'F'
+        && header[8] == 'W'
+        && header[9] == 'E'
+        && header[10] == 'B'
+        && header[11] == 'P') {
+      return FORMAT_WEBP;
+    }
+    if (length >= 12
+        && header[4] == 'f'
+        && header[5] == 't'
+        && header[6] == 'y'
+        && header[7] == 'p') {
+      String brand = new String(header, 8, 4);
+      if (brand.startsWith("hei")
+          || brand.startsWith("hev")
+          || brand.equals("mif1")
+          || brand.equals("msf1")) {
+        return FORMAT_HEIF;
+      }
+    }
+    if (length >= 2 && header[0] == 'B' && header[1] == 'M') {
+      return FORMAT_BMP;
+    }
+    return null;
+  }
+
+  /** File extension with the dot for a sniffed format, or null when unknown. */
+  @Nullable
+  static String extension(@Nullable String format) {
+    if (format == null) {
+      return null;
+    }
+    switch (format) {
+      case FORMAT_JPEG:
+        return ".jpg";
+      case FORMAT_HEIF:
+        return ".heic";
+      default:
+        return "." + format;
+    }
+  }
+
+  static int readFully(InputStream in, byte[] buffer) throws IOException {
+    int total = 0;
+    while (total < buffer.length) {
+      int read = in.read(buffer, total, buffer.length - total);
+      if (read < 0) {
+        break;
+      }
+      total += read;
+    }
+    return total;
+  }
+
+  private static int u(byte b) {
+    return b & 0xFF;
+  }
+}
@@ -6,20 +6,119 @@ package com.xiamijun.image_picker_controller;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.media.ExifInterface;
+import android.os.Build;
 import android.util.Log;
 import androidx.annotation.Nullable;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 class ImageResizer {
+  static final String RESULT_MODE_BYTES = "bytes";
+  // Sent over the channel in one message; larger results are written to a file instead.
+  static final long DEFAULT_MAX_INLINE_BYTES = 4 * 1024 * 1024;
+  // All byte results of one call share a single reply; once their total would pass this, the
+  // rest are written to files.
+  static final long MAX_TOTAL_INLINE_BYTES = 16 * 1024 * 1024;
+
+  // Sampled decodes above this many pixels, and this many times the output, are done in strips.
+  private static final long TILED_MIN_PIXELS = 4 * 1024 * 1024;
+  private static final int TILED_MIN_RATIO = 4;
+  // Decoded pixels per strip.
+  private static final long TILED_STRIP_PIXELS = 1024 * 1024;
+  private static final int MAX_SAMPLE_SIZE = 64;
+
   private final File externalFilesDirectory;
   private final ExifDataCopier exifDataCopier;
+  private final MemoryBudget memoryBudget;
 
-  ImageResizer(File externalFilesDirectory, ExifDataCopier exifDataCopier) {
+  ImageResizer(
+      File externalFilesDirectory, ExifDataCopier exifDataCopier, MemoryBudget memoryBudget) {
     this.externalFilesDirectory = externalFilesDirectory;
     this.exifDataCopier = exifDataCopier;
+    this.memoryBudget = memoryBudget;
+  }
+
+  /** What {@link #resizeImageIfNeeded(String, Options)} should do to an image. */
+  static class Options {
+    @Nullable Double maxWidth;
+    @Nullable Double maxHeight;
+    @Nullable Integer imageQuality;
+    // Crop in displayed (EXIF-applied) coordinates: pixels, or fractions of the size when
+    // cropNormalized is set.
+    @Nullable RectF crop;
+    boolean cropNormalized;
+    // Width / height of the output as displayed; the crop, or the whole image, is narrowed around
+    // its centre to match.
+    @Nullable Double aspectRatio;
+    // Rotate and flip the pixels as the EXIF orientation says, and write the orientation as
+    // normal, so consumers do not have to. Size limits then apply to the displayed size.
+    boolean bakeOrientation;
+    // Memory limits of the decode; see ProcessingProfile.
+    ProcessingProfile profile = ProcessingProfile.STANDARD;
+    // Largest encoded result resizeImageInline returns as bytes; 0 always writes a file. Inline
+    // bytes carry no EXIF, so options that set it also bake the orientation.
+    long maxInlineBytes;
+
+    boolean hasCrop() {
+      return crop != null || aspectRatio != null;
+    }
+
+    /** Equal for options that produce the same output from the same source. */
+    String key() {
+      return maxWidth
+          + "/"
+          + maxHeight
+          + "/"
+          + imageQuality
+          + "/"
+          + crop
+          + "/"
+          + cropNormalized
+          + "/"
+          + aspectRatio
+          + "/"
+          + bakeOrientation
+          + "/"
+          + profile.name
+          + "/"
+          + maxInlineBytes;
+    }
+
+    static Options fromConfiguration(PickerConfiguration config, ProcessingProfile profile) {
+      Options options = new Options();
+      options.profile = profile;
+      options.maxWidth = config.maxWidth;
+      options.maxHeight = config.maxHeight;
+      options.imageQuality = config.imageQuality;
+      if (config.cropRect != null && config.cropRect.size() == 4) {
+        options.crop =
+            new RectF(
+                config.cropRect.get(0).floatValue(),
+                config.cropRect.get(1).floatValue(),
+                config.cropRect.get(2).floatValue(),
+                config.cropRect.get(3).floatValue());
+      }
+      options.cropNormalized = config.cropRectNormalized;
+      options.aspectRatio = config.cropAspectRatio;
+      options.bakeOrientation = config.bakeOrientation;
+      if (RESULT_MODE_BYTES.equals(config.resultMode)) {
+        options.maxInlineBytes =
+            config.maxInlineBytes != null ? config.maxInlineBytes : DEFAULT_MAX_INLINE_BYTES;
+        options.bakeOrientation = true;
+      }
+      return options;
+    }
   }
 
   /**
@@ -33,26 +132,322 @@ class ImageResizer {
       @Nullable Double maxWidth,
       @Nullable Double maxHeight,
       @Nullable Integer imageQuality) {
-    Bitmap bmp = decodeFile(imagePath);
-    if (bmp == null) {
+    Options options = new Options();
+    options.maxWidth = maxWidth;
+    options.maxHeight = maxHeight;
+    options.imageQuality = imageQuality;
+    return resizeImageIfNeeded(imagePath, options);
+  }
+
+  /**
+   * Crops and resizes the image located in imagePath if necessary, and returns the path of the
+   * result, or of the original image when nothing needs to change.
+   *
+   * <p>The header is probed first, so an image that already fits is returned without decoding, and
+   * an image that does not is decoded at the largest sample size that still covers the target
+   * size. A crop is applied while decoding: only the pixels inside it are read, then scaled and
+   * encoded once.
+   */
+  String resizeImageIfNeeded(String imagePath, Options options) {
+    Encoded encoded = encodeIfNeeded(imagePath, options);
+    if (encoded == null) {
       return null;
     }
-    boolean shouldScale =
-        maxWidth != null || maxHeight != null || isImageQualityValid(imageQuality);
-    if (!shouldScale) {
+    return encoded.bytes != null ? write(imagePath, encoded) : imagePath;
+  }
+
+  /**
+   * Like {@link #resizeImageIfNeeded(String, Options)}, but returns the encoded result itself as a
+   * {@code byte[]} when it is at most {@link Options#maxInlineBytes} and fits in what is left of
+   * inlineBudget, so it is not written to disk and read back. Larger results are written and their
+   * path returned, as is the path of an original that needs no change.
+   *
+   * <p>inlineBudget is shared by every result of one call, since they are all returned in one
+   * reply; pass a new {@code AtomicLong(MAX_TOTAL_INLINE_BYTES)} per call.
+   */
+  @Nullable
+  Object resizeImageInline(String imagePath, Options options, AtomicLong inlineBudget) {
+    Encoded encoded = encodeIfNeeded(imagePath, options);
+    if (encoded == null) {
+      return null;
+    }
+    if (encoded.bytes == null) {
       return imagePath;
     }
+    if (encoded.bytes.length <= options.maxInlineBytes
+        && reserve(inlineBudget, encoded.bytes.length)) {
+      return encoded.bytes;
+    }
+    return write(imagePath, encoded);
+  }
+
+  /** Takes size from budget if enough is left, without letting it go negative. */
+  private static boolean reserve(AtomicLong budget, long size) {
+    while (true) {
+      long left = budget.get();
+      if (left < size) {
+        return false;
+      }
+      if (budget.compareAndSet(left, left - size)) {
+        return true;
+      }
+    }
+  }
+
+  /** Writes encoded next to the other results and copies the EXIF of the source to it. */
+  private String write(String imagePath, Encoded encoded) {
     try {
-      String[] pathParts = imagePath.split("/");
-      String imageName = pathParts[pathParts.length - 1];
-      File file = resizedImage(bmp, maxWidth, maxHeight, imageQuality, imageName);
-      copyExif(imagePath, file.getPath());
+      File file = createImageOnExternalDirectory(encoded.bytes);
+      exifDataCopier.copyExif(imagePath, file.getPath(), encoded.orientationApplied);
       return file.getPath();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
+  /**
+   * Crops, resizes and encodes the image in memory; returns an {@link Encoded} without bytes when
+   * the original can be used as is, or null when it cannot be read.
+   */
+  @Nullable
+  private Encoded encodeIfNeeded(String imagePath, Options options) {
+    ImageProbe probe = ImageProbe.probe(imagePath);
+    if (probe == null) {
+      return null;
+    }
+    Double maxWidth = options.maxWidth;
+    Double maxHeight = options.maxHeight;
+    Integer imageQuality = options.imageQuality;
+    Rect crop = options.hasCrop() ? storedCropRect(probe, options) : null;
+    if (crop != null && crop.width() == probe.width && crop.height() == probe.height) {
+      crop = null;
+    }
+    int orientation =
+        options.bakeOrientation && probe.orientation != ExifInterface.ORIENTATION_UNDEFINED
+            ? probe.orientation
+            : ExifInterface.ORIENTATION_NORMAL;
+    boolean bake = orientation != ExifInterface.ORIENTATION_NORMAL;
+    boolean shouldScale =
+        maxWidth != null
+            || maxHeight != null
+            || isImageQualityValid(imageQuality)
+            || crop != null
+            || bake;
+    if (!shouldScale) {
+      return new Encoded(null, false);
+    }
+    int sourceWidth = crop != null ? crop.width() : probe.width;
+    int sourceHeight = crop != null ? crop.height() : probe.height;
+    if (bake && ImageProbe.isTransposed(orientation)) {
+      int swap = sourceWidth;
+      sourceWidth = sourceHeight;
+      sourceHeight = swap;
+    }
+    boolean fits =
+        (maxWidth == null || sourceWidth <= maxWidth)
+            && (maxHeight == null || sourceHeight <= maxHeight);
+    if (fits && crop == null && !bake && !isImageQualityValid(imageQuality)) {
+      // Re-encoding at full quality would only grow the file.
+      return new Encoded(null, false);
+    }
+    ProcessingProfile profile = options.profile;
+    int inSampleSize =
+        calculateInSampleSize(sourceWidth, sourceHeight, maxWidth, maxHeight)
+            * memoryBudget.sampleSizeFactor();
+    boolean tiled = crop == null && shouldTile(probe, inSampleSize, maxWidth, maxHeight);
+    if (!tiled) {
+      while (profile.maxDecodePixels > 0
+          && decodedPixels(sourceWidth, sourceHeight, inSampleSize) > profile.maxDecodePixels
+          && inSampleSize < MAX_SAMPLE_SIZE) {
+        inSampleSize *= 2;
+      }
+    }
+    Bitmap.Config decodeConfig =
+        ImageProbe.FORMAT_JPEG.equals(probe.format) ? profile.opaqueDecodeConfig : null;
+    int bytesPerPixel = decodeConfig == Bitmap.Config.RGB_565 ? 2 : 4;
+    double[] outputSize = targetSize(sourceWidth, sourceHeight, maxWidth, maxHeight);
+    outputSize[0] = Math.min(outputSize[0], sourceWidth / inSampleSize);
+    outputSize[1] = Math.min(outputSize[1], sourceHeight / inSampleSize);
+    long bytes =
+        estimateBytes(
+            sourceWidth,
+            sourceHeight,
+            inSampleSize,
+            outputSize,
+            tiled,
+            bytesPerPixel,
+            profile.areaAveraging,
+            bake);
+    // A job that could never fit the budget is decoded smaller instead.
+    while (!tiled && bytes > memoryBudget.capacity() && inSampleSize < MAX_SAMPLE_SIZE) {
+      inSampleSize *= 2;
+      outputSize[0] = Math.min(outputSize[0], sourceWidth / inSampleSize);
+      outputSize[1] = Math.min(outputSize[1], sourceHeight / inSampleSize);
+      bytes =
+          estimateBytes(
+              sourceWidth,
+              sourceHeight,
+              inSampleSize,
+              outputSize,
+              false,
+              bytesPerPixel,
+              profile.areaAveraging,
+              bake);
+    }
+    try {
+      memoryBudget.acquire(bytes);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+    try {
+      byte[] encoded;
+      if (tiled) {
+        encoded =
+            resizedImageTiled(imagePath, probe, maxWidth, maxHeight, imageQuality, orientation);
+      } else {
+        Bitmap bmp =
+            crop != null
+                ? decodeRegion(imagePath, probe, crop, inSampleSize, decodeConfig)
+                : decodeFile(imagePath, inSampleSize, decodeConfig);
+        if (bmp == null) {
+          return null;
+        }
+        try {
+          encoded =
+              resizedImage(
+                  bmp, maxWidth, maxHeight, imageQuality, orientation, profile.areaAveraging);
+        } finally {
+          // Freed before the budget is released below, rather than whenever GC gets to it.
+          bmp.recycle();
+        }
+      }
+      return new Encoded(encoded, bake);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      memoryBudget.release(bytes);
+    }
+  }
+
+  /**
+   * Peak bytes of a resize: the decoded bitmap and the output, plus when area averaging the
+   * {@code int[]} copy in the downscaler, the halving buffers (at most a third of that copy), the
+   * output pixels and, when baking the orientation, the oriented copy of the output; or for a
+   * tiled resize the output and one strip.
+   */
+  static long estimateBytes(
+      int width,
+      int height,
+      int inSampleSize,
+      double[] outputSize,
+      boolean tiled,
+      int bytesPerPixel,
+      boolean areaAveraging,
+      boolean baked) {
+    long output = (long) outputSize[0] * (long) outputSize[1] * 4;
+    if (tiled) {
+      return output * 2 + TILED_STRIP_PIXELS * 4 * 2;
+    }
+    long decoded = decodedPixels(width, height, inSampleSize);
+    if (!areaAveraging) {
+      // Scaled, and oriented when baking, in a single draw.
+      return decoded * bytesPerPixel + output;
+    }
+    long rotated = baked ? output : 0;
+    long halving = decoded * 4 / 3;
+    return decoded * (bytesPerPixel + 4) + halving + output * 2 + rotated;
+  }
+
+  private static long decodedPixels(int width, int height, int inSampleSize) {
+    long decodedWidth = (width + inSampleSize - 1) / inSampleSize;
+    long decodedHeight = (height + inSampleSize - 1) / inSampleSize;
+    return decodedWidth * decodedHeight;
+  }
+
+  /**
+   * Maps the crop and aspect ratio of options, given as displayed, to a rect of stored pixels, or
+   * returns null when the crop is empty.
+   */
+  @Nullable
+  static Rect storedCropRect(ImageProbe probe, Options options) {
+    boolean transposed = probe.isTransposed();
+    float displayedWidth = transposed ? probe.height : probe.width;
+    float displayedHeight = transposed ? probe.width : probe.height;
+    RectF rect = new RectF(0, 0, displayedWidth, displayedHeight);
+    if (options.crop != null) {
+      rect.set(options.crop);
+      if (options.cropNormalized) {
+        rect.left *= displayedWidth;
+        rect.right *= displayedWidth;
+        rect.top *= displayedHeight;
+        rect.bottom *= displayedHeight;
+      }
+      if (!rect.intersect(0, 0, displayedWidth, displayedHeight)) {
+        return null;
+      }
+    }
+    if (options.aspectRatio != null && options.aspectRatio > 0) {
+      float ratio = options.aspectRatio.floatValue();
+      if (rect.width() / rect.height() > ratio) {
+        float inset = (rect.width() - rect.height() * ratio) / 2;
+        rect.inset(inset, 0);
+      } else {
+        float inset = (rect.height() - rect.width() / ratio) / 2;
+        rect.inset(0, inset);
+      }
+    }
+
+    // Inverse of the EXIF orientation, from displayed to stored coordinates.
+    float w = probe.width;
+    float h = probe.height;
+    float[] points = {rect.left, rect.top, rect.right, rect.bottom};
+    for (int i = 0; i < points.length; i += 2) {
+      float x = points[i];
+      float y = points[i + 1];
+      switch (probe.orientation) {
+        case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+          points[i] = w - x;
+          break;
+        case ExifInterface.ORIENTATION_ROTATE_180:
+          points[i] = w - x;
+          points[i + 1] = h - y;
+          break;
+        case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+          points[i + 1] = h - y;
+          break;
+        case ExifInterface.ORIENTATION_TRANSPOSE:
+          points[i] = y;
+          points[i + 1] = x;
+          break;
+        case ExifInterface.ORIENTATION_ROTATE_90:
+          points[i] = y;
+          points[i + 1] = h - x;
+          break;
+        case ExifInterface.ORIENTATION_TRANSVERSE:
+          points[i] = w - y;
+          points[i + 1] = h - x;
+          break;
+        case ExifInterface.ORIENTATION_ROTATE_270:
+          points[i] = w - y;
+          points[i + 1] = x;
+          break;
+        default:
+          break;
+      }
+    }
+    Rect stored =
+        new Rect(
+            Math.round(Math.min(points[0], points[2])),
+            Math.round(Math.min(points[1], points[3])),
+            Math.round(Math.max(points[0], points[2])),
+            Math.round(Math.max(points[1], points[3])));
+    if (!stored.intersect(0, 0, probe.width, probe.height) || stored.isEmpty()) {
+      return null;
+    }
+    return stored;
+  }
+
   /// 由Bitmap生成图片路径
   String resizeImageFromBitmap(Bitmap bmp) {
     if (bmp == null) {
@@ -60,24 +455,250 @@ class ImageResizer {
     }
 
     try {
-      String imageName = System.currentTimeMillis() + ".jpg";
-      File file = resizedImage(bmp, null, null, null, imageName);
-      return file.getPath();
+      byte[] encoded =
+          resizedImage(bmp, null, null, null, ExifInterface.ORIENTATION_NORMAL, true);
+      return createImageOnExternalDirectory(encoded).getPath();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
-  private File resizedImage(
-      Bitmap bmp, Double maxWidth, Double maxHeight, Integer imageQuality, String outputImageName)
-      throws IOException {
-    double originalWidth = bmp.getWidth() * 1.0;
-    double originalHeight = bmp.getHeight() * 1.0;
+  /**
+   * Scales bmp and, unless it is normal, applies orientation; returns the result encoded.
+   * Intermediate bitmaps are recycled, bmp is not.
+   *
+   * <p>Orientation is applied with one filtered draw whose matrix both scales and orients, into a
+   * bitmap at the displayed size. Filtered drawing only blends neighbouring pixels and aliases
+   * past a 2x reduction, so when area averaging and shrinking by at least that much the image is
+   * area-averaged to its output size first, and the draw only rotates or flips.
+   */
+  private byte[] resizedImage(
+      Bitmap bmp,
+      Double maxWidth,
+      Double maxHeight,
+      Integer imageQuality,
+      int orientation,
+      boolean areaAveraging) {
+    if (!isImageQualityValid(imageQuality)) {
+      imageQuality = 100;
+    }
+
+    Bitmap scaledBmp;
+    if (orientation == ExifInterface.ORIENTATION_NORMAL) {
+      double[] size =
+          targetSize(bmp.getWidth() * 1.0, bmp.getHeight() * 1.0, maxWidth, maxHeight);
+      scaledBmp = createScaledBitmap(bmp, (int) size[0], (int) size[1], areaAveraging);
+    } else {
+      boolean transposed = ImageProbe.isTransposed(orientation);
+      double[] size =
+          transposed
+              ? targetSize(bmp.getHeight() * 1.0, bmp.getWidth() * 1.0, maxWidth, maxHeight)
+              : targetSize(bmp.getWidth() * 1.0, bmp.getHeight() * 1.0, maxWidth, maxHeight);
+      int displayedWidth = Math.max(1, (int) size[0]);
+      int displayedHeight = Math.max(1, (int) size[1]);
+      int storedWidth = transposed ? displayedHeight : displayedWidth;
+      int storedHeight = transposed ? displayedWidth : displayedHeight;
+      Bitmap stored = bmp;
+      if (areaAveraging
+          && (bmp.getWidth() >= storedWidth * 2 || bmp.getHeight() >= storedHeight * 2)) {
+        stored = createScaledBitmap(bmp, storedWidth, storedHeight, true);
+      }
+      Matrix matrix = new Matrix();
+      matrix.setScale(
+          (float) storedWidth / stored.getWidth(), (float) storedHeight / stored.getHeight());
+      matrix.postConcat(orientationMatrix(orientation, storedWidth, storedHeight));
+      scaledBmp =
+          Bitmap.createBitmap(
+              displayedWidth,
+              displayedHeight,
+              stored.getConfig() != null ? stored.getConfig() : Bitmap.Config.ARGB_8888);
+      scaledBmp.setHasAlpha(stored.hasAlpha());
+      new Canvas(scaledBmp).drawBitmap(stored, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+      if (stored != bmp) {
+        stored.recycle();
+      }
+    }
+    try {
+      return encode(scaledBmp, imageQuality);
+    } finally {
+      // Scaling returns bmp itself when the size is unchanged.
+      if (scaledBmp != bmp) {
+        scaledBmp.recycle();
+      }
+    }
+  }
 
+  /**
+   * Whether a sampled decode would be large enough, compared to the output, that decoding in
+   * strips is worth it. Only formats {@link BitmapRegionDecoder} reads qualify.
+   */
+  private static boolean shouldTile(
+      ImageProbe probe, int inSampleSize, Double maxWidth, Double maxHeight) {
+    if (!isRegionDecodable(probe)) {
+      return false;
+    }
+    long sampledPixels =
+        (long) (probe.width / inSampleSize) * (long) (probe.height / inSampleSize);
+    double[] size = targetSize(probe.width, probe.height, maxWidth, maxHeight);
+    long outputPixels = (long) size[0] * (long) size[1];
+    return sampledPixels > TILED_MIN_PIXELS && sampledPixels > outputPixels * TILED_MIN_RATIO;
+  }
+
+  /**
+   * Resizes by decoding the source in horizontal strips with {@link BitmapRegionDecoder} and
+   * drawing each, scaled, into a bitmap preallocated at the output size. Peak memory is the
+   * output plus one strip whatever the source dimensions, which keeps panoramas and scans from
+   * running out of memory.
+   */
+  private byte[] resizedImageTiled(
+      String imagePath,
+      ImageProbe probe,
+      Double maxWidth,
+      Double maxHeight,
+      Integer imageQuality,
+      int orientation)
+      throws IOException {
     if (!isImageQualityValid(imageQuality)) {
       imageQuality = 100;
     }
+    // Strips are drawn in stored coordinates; the canvas maps them to the displayed output.
+    boolean transposed = ImageProbe.isTransposed(orientation);
+    double[] size =
+        transposed
+            ? targetSize(probe.height, probe.width, maxWidth, maxHeight)
+            : targetSize(probe.width, probe.height, maxWidth, maxHeight);
+    int displayedWidth = Math.max(1, (int) size[0]);
+    int displayedHeight = Math.max(1, (int) size[1]);
+    int outputWidth = transposed ? displayedHeight : displayedWidth;
+    int outputHeight = transposed ? displayedWidth : displayedHeight;
+    int inSampleSize =
+        calculateInSampleSize(
+            probe.width, probe.height, (double) outputWidth, (double) outputHeight);
+    // Source rows per strip, a multiple of the sample size so strips meet on whole pixels.
+    int stripHeight =
+        (int) Math.max(1, TILED_STRIP_PIXELS * inSampleSize * inSampleSize / probe.width);
+    stripHeight = Math.max(inSampleSize, stripHeight / inSampleSize * inSampleSize);
 
+    BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(imagePath, false);
+    Bitmap output =
+        Bitmap.createBitmap(displayedWidth, displayedHeight, Bitmap.Config.ARGB_8888);
+    // Encoded as JPEG unless a strip turns out to have alpha.
+    output.setHasAlpha(false);
+    try {
+      Canvas canvas = new Canvas(output);
+      canvas.concat(orientationMatrix(orientation, outputWidth, outputHeight));
+      Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+      BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inSampleSize = inSampleSize;
+      Rect source = new Rect();
+      RectF destination = new RectF();
+      double scaleY = (double) outputHeight / probe.height;
+      for (int top = 0; top < probe.height; top += stripHeight) {
+        int bottom = Math.min(probe.height, top + stripHeight);
+        source.set(0, top, probe.width, bottom);
+        Bitmap strip = decoder.decodeRegion(source, options);
+        if (strip == null) {
+          throw new IOException("Unable to decode rows " + top + "-" + bottom + " of " + imagePath);
+        }
+        destination.set(0, (float) (top * scaleY), outputWidth, (float) (bottom * scaleY));
+        if (strip.hasAlpha()) {
+          output.setHasAlpha(true);
+        }
+        canvas.drawBitmap(strip, null, destination, paint);
+        strip.recycle();
+      }
+      return encode(output, imageQuality);
+    } finally {
+      decoder.recycle();
+      output.recycle();
+    }
+  }
+
+  private static boolean isRegionDecodable(ImageProbe probe) {
+    return ImageProbe.FORMAT_JPEG.equals(probe.format)
+        || ImageProbe.FORMAT_PNG.equals(probe.format)
+        || ImageProbe.FORMAT_WEBP.equals(probe.format)
+        || (ImageProbe.FORMAT_HEIF.equals(probe.format)
+            && Build.VERSION.SDK_INT >= Build.VERSION_CODES.P);
+  }
+
+  /** Decodes only the pixels inside crop, sampled; falls back to a full decode and a copy. */
+  @Nullable
+  private Bitmap decodeRegion(
+      String path,
+      ImageProbe probe,
+      Rect crop,
+      int inSampleSize,
+      @Nullable Bitmap.Config decodeConfig)
+      throws IOException {
+    if (isRegionDecodable(probe)) {
+      BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(path, false);
+      try {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = inSampleSize;
+        if (decodeConfig != null) {
+          options.inPreferredConfig = decodeConfig;
+        }
+        return decoder.decodeRegion(crop, options);
+      } finally {
+        decoder.recycle();
+      }
+    }
+    Bitmap full = decodeFile(path, inSampleSize, decodeConfig);
+    if (full == null) {
+      return null;
+    }
+    int left = Math.min(full.getWidth() - 1, crop.left / inSampleSize);
+    int top = Math.min(full.getHeight() - 1, crop.top / inSampleSize);
+    int width = Math.max(1, Math.min(full.getWidth() - left, crop.width() / inSampleSize));
+    int height = Math.max(1, Math.min(full.getHeight() - top, crop.height() / inSampleSize));
+    Bitmap cropped = Bitmap.createBitmap(full, left, top, width, height);
+    if (cropped != full) {
+      full.recycle();
+    }
+    return cropped;
+  }
+
+  /**
+   * Maps stored pixels of a width x height image to where the EXIF orientation displays them, in
+   * a width x height box, or height x width when the orientation transposes.
+   */
+  static Matrix orientationMatrix(int orientation, float width, float height) {
+    float[] values;
+    switch (orientation) {
+      case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+        values = new float[] {-1, 0, width, 0, 1, 0};
+        break;
+      case ExifInterface.ORIENTATION_ROTATE_180:
+        values = new float[] {-1, 0, width, 0, -1, height};
+        break;
+      case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+        values = new float[] {1, 0, 0, 0, -1, height};
+        break;
+      case ExifInterface.ORIENTATION_TRANSPOSE:
+        values = new float[] {0, 1, 0, 1, 0, 0};
+        break;
+      case ExifInterface.ORIENTATION_ROTATE_90:
+        values = new float[] {0, -1, height, 1, 0, 0};
+        break;
+      case ExifInterface.ORIENTATION_TRANSVERSE:
+        values = new float[] {0, -1, height, -1, 0, width};
+        break;
+      case ExifInterface.ORIENTATION_ROTATE_270:
+        values = new float[] {0, 1, 0, -1, 0, width};
+        break;
+      default:
+        return new Matrix();
+    }
+    Matrix matrix = new Matrix();
+    matrix.setValues(
+        new float[] {values[0], values[1], values[2], values[3], values[4], values[5], 0, 0, 1});
+    return matrix;
+  }
+
+  /** Output size for the given bounds, keeping the aspect ratio; returns {width, height}. */
+  private static double[] targetSize(
+      double originalWidth, double originalHeight, Double maxWidth, Double maxHeight) {
     boolean hasMaxWidth = maxWidth != null;
     boolean hasMaxHeight = maxHeight != null;
 
@@ -113,10 +734,7 @@ class ImageResizer {
       }
     }
 
-    Bitmap scaledBmp = createScaledBitmap(bmp, width.intValue(), height.intValue(), false);
-    File file =
-        createImageOnExternalDirectory("/scaled_" + outputImageName, scaledBmp, imageQuality);
-    return file;
+    return new double[] {width, height};
   }
 
   private File createFile(File externalFilesDirectory, String child) {
@@ -131,24 +749,49 @@ class ImageResizer {
     return new FileOutputStream(imageFile);
   }
 
-  private void copyExif(String filePathOri, String filePathDest) {
-    exifDataCopier.copyExif(filePathOri, filePathDest);
+  /** Decodes sampled; decodeConfig null keeps the default ARGB_8888. */
+  private Bitmap decodeFile(String path, int inSampleSize, @Nullable Bitmap.Config decodeConfig) {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inSampleSize = inSampleSize;
+    if (decodeConfig != null) {
+      options.inPreferredConfig = decodeConfig;
+    }
+    return BitmapFactory.decodeFile(path, options);
   }
 
-  private Bitmap decodeFile(String path) {
-    return BitmapFactory.decodeFile(path);
+  /** Largest power of two that keeps the decoded image at least as large as the target. */
+  static int calculateInSampleSize(
+      int width, int height, @Nullable Double maxWidth, @Nullable Double maxHeight) {
+    double scale = 1;
+    if (maxWidth != null && maxWidth > 0) {
+      scale = Math.min(scale, maxWidth / width);
+    }
+    if (maxHeight != null && maxHeight > 0) {
+      scale = Math.min(scale, maxHeight / height);
+    }
+    int inSampleSize = 1;
+    while (inSampleSize * 2 * scale <= 1) {
+      inSampleSize *= 2;
+    }
+    return inSampleSize;
   }
 
-  private Bitmap createScaledBitmap(Bitmap bmp, int width, int height, boolean filter) {
-    return Bitmap.createScaledBitmap(bmp, width, height, filter);
+  /**
+   * Area-averages when shrinking, which does not alias like nearest or bilinear sampling, unless
+   * areaAveraging is off to spare its {@code int[]} buffers.
+   */
+  private Bitmap createScaledBitmap(Bitmap bmp, int width, int height, boolean areaAveraging) {
+    if (areaAveraging && width <= bmp.getWidth() && height <= bmp.getHeight()) {
+      return ImageDownscaler.downscale(bmp, width, height);
+    }
+    return Bitmap.createScaledBitmap(bmp, width, height, true);
   }
 
   private boolean isImageQualityValid(Integer imageQuality) {
     return imageQuality != null && imageQuality > 0 && imageQuality < 100;
   }
 
-  private File createImageOnExternalDirectory(String name, Bitmap bitmap, int imageQuality)
-      throws IOException {
+  private byte[] encode(Bitmap bitmap, int imageQuality) {
     ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
     boolean saveAsPNG = bitmap.hasAlpha();
     if (saveAsPNG) {
@@ -160,10 +803,35 @@ class ImageResizer {
         saveAsPNG ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG,
         imageQuality,
         outputStream);
-    File imageFile = createFile(externalFilesDirectory, name);
+    return outputStream.toByteArray();
+  }
+
+  /**
+   * Writes encoded under a name of its own, so parallel jobs, and sources with the same file name
+   * in different folders, never overwrite each other's output.
+   */
+  private File createImageOnExternalDirectory(byte[] encoded) throws IOException {
+    String extension = isPng(encoded) ? ".png" : ".jpg";
+    File imageFile =
+        createFile(externalFilesDirectory, "/scaled_" + UUID.randomUUID() + extension);
     FileOutputStream fileOutput = createOutputStream(imageFile);
-    fileOutput.write(outputStream.toByteArray());
+    fileOutput.write(encoded);
     fileOutput.close();
     return imageFile;
   }
+
+  private static boolean isPng(byte[] encoded) {
+    return encoded.length > 1 && encoded[0] == (byte) 0x89 && encoded[1] == 'P';
+  }
+
+  /** An image encoded in memory, not yet written; bytes is null when the original is used. */
+  private static class Encoded {
+    @Nullable final byte[] bytes;
+    final boolean orientationApplied;
+
+    Encoded(@Nullable byte[] bytes, boolean orientationApplied) {
+      this.bytes = bytes;
+      this.orientationApplied = orientationApplied;
+    }
+  }
 }
@@ -0,0 +1,669 @@
+package com.xiamijun.image_picker_controller;
+
+import android.content.ContentResolver;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.ImageDecoder;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PointF;
+import android.graphics.Rect;
+import android.graphics.drawable.AnimatedImageDrawable;
+import android.graphics.drawable.Drawable;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.View;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.graphics.drawable.RoundedBitmapDrawable;
+import androidx.core.graphics.drawable.RoundedBitmapDrawableFactory;
+
+import com.luck.picture.lib.engine.ImageEngine;
+import com.luck.picture.lib.listener.OnImageCompleteCallback;
+import com.luck.picture.lib.tools.MediaUtils;
+import com.luck.picture.lib.widget.longimage.ImageSource;
+import com.luck.picture.lib.widget.longimage.ImageViewState;
+import com.luck.picture.lib.widget.longimage.SubsamplingScaleImageView;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link ImageEngine} that does not depend on Glide.
+ *
+ * <p>Intended for size-constrained apps that exclude Glide from their build. Images are decoded
+ * with {@link BitmapFactory.Options#inSampleSize} close to the requested size, kept in a small
+ * {@link LruCache}, and decoded on a small executor, newest request first. A request bound to an
+ * {@link ImageView} is cancelled as soon as the view is rebound to another url, so recycled grid
+ * cells never decode images that already scrolled off screen, and the queue only ever holds
+ * requests of bound views.
+ *
+ * <p>Selected with {@code useLiteImageEngine} in {@link PickerConfiguration}, and used whenever
+ * the app does not include Glide, which the plugin only compiles against.
+ */
+public class LiteImageEngine implements ImageEngine {
+  private static final String TAG = "LiteImageEngine";
+
+  private static final int DEFAULT_GRID_SIZE = 200;
+  private static final int FOLDER_SIZE = 90;
+  private static final int FOLDER_CORNER_RADIUS = 8;
+  private static final int MAX_REMOTE_BYTES = 20 * 1024 * 1024;
+
+  private final LruCache<String, Bitmap> memoryCache;
+  private final ThreadPoolExecutor decodeExecutor;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  // Only touched on the main thread, where PictureSelector calls the engine.
+  private final Map<ImageView, Request> activeRequests = new WeakHashMap<>();
+  // Edge of grid thumbnails; smaller under the low-memory profile.
+  private volatile int gridSize = DEFAULT_GRID_SIZE;
+
+  private LiteImageEngine() {
+    // A sixteenth of the heap is plenty for a screen of 200px thumbnails.
+    int cacheBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, 32 * 1024 * 1024);
+    memoryCache =
+        new LruCache<String, Bitmap>(cacheBytes) {
+          @Override
+          protected int sizeOf(String key, Bitmap value) {
+            return value.getByteCount();
+          }
+        };
+    int threads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    decodeExecutor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            30,
+            TimeUnit.SECONDS,
+            // When the user flings faster than we decode, the newest cells are the ones on
+            // screen. Unbounded, so no request is ever dropped while its view waits for it.
+            new LifoQueue());
+    decodeExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  private static volatile LiteImageEngine instance;
+
+  public static LiteImageEngine createLiteImageEngine() {
+    if (null == instance) {
+      synchronized (LiteImageEngine.class) {
+        if (null == instance) {
+          instance = new LiteImageEngine();
+        }
+      }
+    }
+    return instance;
+  }
+
+  @Override
+  public void loadImage(@NonNull Context context, @NonNull String url, @NonNull ImageView imageView) {
+    int[] size = previewSize(context);
+    load(context, url, imageView, size[0], size[1], false, null);
+  }
+
+  @Override
+  public void loadImage(
+      @NonNull Context context,
+      @NonNull String url,
+      @NonNull final ImageView imageView,
+      final SubsamplingScaleImageView longImageView,
+      final OnImageCompleteCallback callback) {
+    int[] size = previewSize(context);
+    load(
+        context,
+        url,
+        imageView,
+        size[0],
+        size[1],
+        false,
+        new Target() {
+          @Override
+          void onShowLoading() {
+            if (callback != null) {
+              callback.onShowLoading();
+            }
+          }
+
+          @Override
+          void onHideLoading() {
+            if (callback != null) {
+              callback.onHideLoading();
+            }
+          }
+
+          @Override
+          void onReady(Bitmap bitmap) {
+            showPreview(bitmap, imageView, longImageView);
+          }
+
+          @Override
+          void onFailed() {}
+        });
+  }
+
+  @Override
+  public void loadImage(
+      @NonNull Context context,
+      @NonNull String url,
+      @NonNull final ImageView imageView,
+      final SubsamplingScaleImageView longImageView) {
+    loadImage(context, url, imageView, longImageView, null);
+  }
+
+  @Override
+  public void loadFolderImage(
+      @NonNull final Context context, @NonNull String url, @NonNull final ImageView imageView) {
+    imageView.setImageResource(R.drawable.picture_image_placeholder);
+    load(
+        context,
+        url,
+        imageView,
+        FOLDER_SIZE,
+        FOLDER_SIZE,
+        true,
+        new Target() {
+          @Override
+          void onReady(Bitmap bitmap) {
+            RoundedBitmapDrawable drawable =
+                RoundedBitmapDrawableFactory.create(context.getResources(), bitmap);
+            drawable.setCornerRadius(FOLDER_CORNER_RADIUS);
+            imageView.setImageDrawable(drawable);
+          }
+
+          @Override
+          void onFailed() {}
+        });
+  }
+
+  /** Animates on API 28+ through {@link ImageDecoder}; older devices get the first frame. */
+  @Override
+  public void loadAsGifImage(
+      @NonNull Context context, @NonNull final String url, @NonNull final ImageView imageView) {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P || isRemote(url)) {
+      loadImage(context, url, imageView);
+      return;
+    }
+    cancel(imageView);
+    final ContentResolver resolver = context.getContentResolver();
+    final Request request = new Request(url, null);
+    activeRequests.put(imageView, request);
+    request.future =
+        decodeExecutor.submit(
+            new Runnable() {
+              @Override
+              public void run() {
+                final Drawable drawable = decodeAnimated(resolver, url);
+                mainHandler.post(
+                    new Runnable() {
+                      @Override
+                      public void run() {
+                        if (activeRequests.get(imageView) != request || drawable == null) {
+                          return;
+                        }
+                        activeRequests.remove(imageView);
+                        imageView.setImageDrawable(drawable);
+                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                            && drawable instanceof AnimatedImageDrawable) {
+                          ((AnimatedImageDrawable) drawable).start();
+                        }
+                      }
+                    });
+              }
+            });
+  }
+
+  @Override
+  public void loadGridImage(
+      @NonNull Context context, @NonNull String url, @NonNull ImageView imageView) {
+    load(context, url, imageView, gridSize, gridSize, true, null);
+  }
+
+  /**
+   * Decodes a grid thumbnail into the memory cache ahead of {@link #loadGridImage}. Returns the
+   * queued decode so it can be cancelled, or null when the thumbnail is already cached.
+   */
+  @Nullable
+  Future<?> preloadGridImage(@NonNull Context context, @NonNull final String url) {
+    final int size = gridSize;
+    final String key = cacheKey(url, size, size, true);
+    if (memoryCache.get(key) != null) {
+      return null;
+    }
+    final ContentResolver resolver = context.getContentResolver();
+    return decodeExecutor.submit(
+        new Runnable() {
+          @Override
+          public void run() {
+            if (memoryCache.get(key) != null) {
+              return;
+            }
+            Bitmap bitmap = decodeSampled(resolver, url, size, size, true);
+            if (bitmap != null) {
+              memoryCache.put(key, bitmap);
+            }
+          }
+        });
+  }
+
+  void setGridSize(int gridSize) {
+    this.gridSize = gridSize;
+  }
+
+  /** Drops all cached thumbnails. */
+  void clearMemory() {
+    memoryCache.evictAll();
+  }
+
+  /**
+   * Shrinks the thumbnail cache of the engine, if one was created, in proportion to the trim level
+   * of {@link android.content.ComponentCallbacks2#onTrimMemory}.
+   */
+  static void trimMemory(int level) {
+    LiteImageEngine engine = instance;
+    if (engine == null) {
+      return;
+    }
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+        || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+      engine.clearMemory();
+    } else {
+      engine.memoryCache.trimToSize(engine.memoryCache.maxSize() / 2);
+    }
+  }
+
+  /** Hands the most recently queued request to the next free thread. */
+  private static class LifoQueue extends LinkedBlockingDeque<Runnable> {
+    @Override
+    public boolean offer(Runnable runnable) {
+      return offerFirst(runnable);
+    }
+  }
+
+  /**
+   * Receives the result of a load on the main thread. {@link #onShowLoading} is only called when a
+   * decode is queued, and is always balanced by one {@link #onHideLoading}, whether the decode then
+   * succeeds, fails or is dropped because the view was rebound.
+   */
+  private abstract static class Target {
+    private boolean loading;
+
+    final void showLoading() {
+      if (!loading) {
+        loading = true;
+        onShowLoading();
+      }
+    }
+
+    final void hideLoading() {
+      if (loading) {
+        loading = false;
+        onHideLoading();
+      }
+    }
+
+    void onShowLoading() {}
+
+    void onHideLoading() {}
+
+    abstract void onReady(Bitmap bitmap);
+
+    abstract void onFailed();
+  }
+
+  private static class Request {
+    final String key;
+    // Replaced when the view asks for the same key again; only touched on the main thread.
+    @Nullable Target target;
+    volatile Future<?> future;
+
+    Request(String key, @Nullable Target target) {
+      this.key = key;
+      this.target = target;
+    }
+  }
+
+  private void load(
+      Context context,
+      final String url,
+      final ImageView imageView,
+      final int width,
+      final int height,
+      final boolean centerCrop,
+      @Nullable final Target target) {
+    final String key = cacheKey(url, width, height, centerCrop);
+    Request current = activeRequests.get(imageView);
+    if (current != null && current.key.equals(key)) {
+      // Already decoding; the newest target gets the result.
+      if (target != null && target != current.target) {
+        if (current.target != null) {
+          current.target.hideLoading();
+        }
+        current.target = target;
+        target.showLoading();
+      }
+      return;
+    }
+    cancel(imageView);
+
+    Bitmap cached = memoryCache.get(key);
+    if (cached != null) {
+      deliver(imageView, cached, target);
+      return;
+    }
+    if (target == null) {
+      imageView.setImageResource(R.drawable.picture_image_placeholder);
+    }
+
+    final ContentResolver resolver = context.getContentResolver();
+    final Request request = new Request(key, target);
+    activeRequests.put(imageView, request);
+    if (target != null) {
+      target.showLoading();
+    }
+    request.future =
+        decodeExecutor.submit(
+            new Runnable() {
+              @Override
+              public void run() {
+                Bitmap bitmap = memoryCache.get(key);
+                if (bitmap == null) {
+                  bitmap = decodeSampled(resolver, url, width, height, centerCrop);
+                  if (bitmap != null) {
+                    memoryCache.put(key, bitmap);
+                  }
+                }
+                final Bitmap result = bitmap;
+                mainHandler.post(
+                    new Runnable() {
+                      @Override
+                      public void run() {
+                        // The view was recycled for another url while we were decoding.
+                        if (activeRequests.get(imageView) != request) {
+                          return;
+                        }
+                        activeRequests.remove(imageView);
+                        Target current = request.target;
+                        if (current != null) {
+                          current.hideLoading();
+                        }
+                        if (result != null) {
+                          deliver(imageView, result, current);
+                        } else if (current != null) {
+                          current.onFailed();
+                        }
+                      }
+                    });
+              }
+            });
+  }
+
+  private static String cacheKey(String url, int width, int height, boolean centerCrop) {
+    return url + '#' + width + 'x' + height + (centerCrop ? "c" : "");
+  }
+
+  /**
+   * Drops the request of imageView, if any. A cancelled decode stays queued until a worker takes
+   * it and then does nothing, which is cheaper than purging the queue on every rebind.
+   */
+  private void cancel(ImageView imageView) {
+    Request previous = activeRequests.remove(imageView);
+    if (previous == null) {
+      return;
+    }
+    if (previous.future != null) {
+      previous.future.cancel(false);
+    }
+    if (previous.target != null) {
+      previous.target.hideLoading();
+    }
+  }
+
+  private static void deliver(ImageView imageView, Bitmap bitmap, @Nullable Target target) {
+    if (target != null) {
+      target.onReady(bitmap);
+    } else {
+      imageView.setImageBitmap(bitmap);
+    }
+  }
+
+  private static void showPreview(
+      Bitmap resource, ImageView imageView, SubsamplingScaleImageView longImageView) {
+    boolean eqLongImage = MediaUtils.isLongImg(resource.getWidth(), resource.getHeight());
+    if (longImageView == null) {
+      imageView.setImageBitmap(resource);
+      return;
+    }
+    longImageView.setVisibility(eqLongImage ? View.VISIBLE : View.GONE);
+    imageView.setVisibility(eqLongImage ? View.GONE : View.VISIBLE);
+    if (eqLongImage) {
+      longImageView.setQuickScaleEnabled(true);
+      longImageView.setZoomEnabled(true);
+      longImageView.setPanEnabled(true);
+      longImageView.setDoubleTapZoomDuration(100);
+      longImageView.setMinimumScaleType(SubsamplingScaleImageView.SCALE_TYPE_CENTER_CROP);
+      longImageView.setDoubleTapZoomDpi(SubsamplingScaleImageView.ZOOM_FOCUS_CENTER);
+      longImageView.setImage(
+          ImageSource.bitmap(resource), new ImageViewState(0, new PointF(0, 0), 0));
+    } else {
+      imageView.setImageBitmap(resource);
+    }
+  }
+
+  private static int[] previewSize(Context context) {
+    int width = context.getResources().getDisplayMetrics().widthPixels;
+    int height = context.getResources().getDisplayMetrics().heightPixels;
+    return new int[] {width, height};
+  }
+
+  @Nullable
+  private static Bitmap decodeSampled(
+      ContentResolver resolver, String url, int width, int height, boolean centerCrop) {
+    try {
+      byte[] remote = isRemote(url) ? download(url) : null;
+
+      BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inJustDecodeBounds = true;
+      decode(resolver, url, remote, options);
+      if (options.outWidth <= 0 || options.outHeight <= 0) {
+        return null;
+      }
+
+      int orientation = remote == null ? readOrientation(resolver, url) : 0;
+      boolean swapped = orientation == 90 || orientation == 270;
+      int sourceWidth = swapped ? options.outHeight : options.outWidth;
+      int sourceHeight = swapped ? options.outWidth : options.outHeight;
+
+      options.inJustDecodeBounds = false;
+      options.inSampleSize =
+          calculateInSampleSize(sourceWidth, sourceHeight, width, height, centerCrop);
+      options.inPreferredConfig = Bitmap.Config.RGB_565;
+      Bitmap bitmap = decode(resolver, url, remote, options);
+      if (bitmap == null) {
+        return null;
+      }
+      if (orientation != 0) {
+        Matrix matrix = new Matrix();
+        matrix.postRotate(orientation);
+        Bitmap rotated =
+            Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (rotated != bitmap) {
+          bitmap.recycle();
+        }
+        bitmap = rotated;
+      }
+      return centerCrop ? centerCrop(bitmap, width, height) : bitmap;
+    } catch (IOException | OutOfMemoryError e) {
+      Log.w(TAG, "Unable to decode " + url, e);
+      return null;
+    }
+  }
+
+  @Nullable
+  private static Bitmap decode(
+      ContentResolver resolver, String url, @Nullable byte[] remote, BitmapFactory.Options options)
+      throws IOException {
+    if (remote != null) {
+      return BitmapFactory.decodeByteArray(remote, 0, remote.length, options);
+    }
+    InputStream in = open(resolver, url);
+    try {
+      return BitmapFactory.decodeStream(in, null, options);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Largest power of two that keeps the decoded image at least as large as the target in the
+   * dimension that matters for the scale type.
+   */
+  static int calculateInSampleSize(
+      int sourceWidth, int sourceHeight, int width, int height, boolean centerCrop) {
+    int sampleSize = 1;
+    while (true) {
+      int nextWidth = sourceWidth / (sampleSize * 2);
+      int nextHeight = sourceHeight / (sampleSize * 2);
+      boolean fits =
+          centerCrop
+              ? nextWidth >= width && nextHeight >= height
+              : nextWidth >= width || nextHeight >= height;
+      if (!fits) {
+        return sampleSize;
+      }
+      sampleSize *= 2;
+    }
+  }
+
+  private static Bitmap centerCrop(Bitmap source, int width, int height) {
+    if (source.getWidth() == width && source.getHeight() == height) {
+      return source;
+    }
+    float scale =
+        Math.max((float) width / source.getWidth(), (float) height / source.getHeight());
+    int cropWidth = Math.round(width / scale);
+    int cropHeight = Math.round(height / scale);
+    int left = (source.getWidth() - cropWidth) / 2;
+    int top = (source.getHeight() - cropHeight) / 2;
+
+    Bitmap output = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+    new Canvas(output)
+        .drawBitmap(
+            source,
+            new Rect(left, top, left + cropWidth, top + cropHeight),
+            new Rect(0, 0, width, height),
+            new Paint(Paint.FILTER_BITMAP_FLAG));
+    source.recycle();
+    return output;
+  }
+
+  @Nullable
+  private static Drawable decodeAnimated(ContentResolver resolver, String url) {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+      return null;
+    }
+    try {
+      ImageDecoder.Source source =
+          isUri(url)
+              ? ImageDecoder.createSource(resolver, Uri.parse(url))
+              : ImageDecoder.createSource(new File(url));
+      return ImageDecoder.decodeDrawable(source);
+    } catch (IOException e) {
+      Log.w(TAG, "Unable to decode " + url, e);
+      return null;
+    }
+  }
+
+  private static int readOrientation(ContentResolver resolver, String url) {
+    try {
+      ExifInterface exif;
+      InputStream in = null;
+      if (!isUri(url)) {
+        exif = new ExifInterface(url);
+      } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+        in = open(resolver, url);
+        exif = new ExifInterface(in);
+      } else {
+        return 0;
+      }
+      try {
+        switch (exif.getAttributeInt(
+            ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)) {
+          case ExifInterface.ORIENTATION_ROTATE_90:
+            return 90;
+          case ExifInterface.ORIENTATION_ROTATE_180:
+            return 180;
+          case ExifInterface.ORIENTATION_ROTATE_270:
+            return 270;
+          default:
+            return 0;
+        }
+      } finally {
+        if (in != null) {
+          in.close();
+        }
+      }
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  private static InputStream open(ContentResolver resolver, String url) throws IOException {
+    if (isUri(url)) {
+      InputStream in = resolver.openInputStream(Uri.parse(url));
+      if (in == null) {
+        throw new IOException("Unable to open " + url);
+      }
+      return in;
+    }
+    return new FileInputStream(url);
+  }
+
+  private static byte[] download(String url) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    try {
+      InputStream in = connection.getInputStream();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[16 * 1024];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+        if (out.size() > MAX_REMOTE_BYTES) {
+          throw new IOException("Remote image too large: " + url);
+        }
+      }
+      in.close();
+      return out.toByteArray();
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  private static boolean isUri(String url) {
+    return url.startsWith(ContentResolver.SCHEME_CONTENT + ":")
+        || url.startsWith(ContentResolver.SCHEME_FILE + ":")
+        || url.startsWith(ContentResolver.SCHEME_ANDROID_RESOURCE + ":");
+  }
+
+  private static boolean isRemote(String url) {
+    return url.startsWith("http://") || url.startsWith("https://");
+  }
+}
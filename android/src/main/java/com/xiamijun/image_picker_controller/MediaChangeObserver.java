@@ -0,0 +1,316 @@
+package com.xiamijun.image_picker_controller;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.plugin.common.EventChannel;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Incremental change feed over the image and video collections.
+ *
+ * <p>While Dart listens, a {@link ContentObserver} watches both collections and emits a debounced
+ * event carrying the current change token. Dart then calls {@code getMediaChanges} with the token
+ * it last synced at and gets back only the inserted, updated and deleted ids.
+ *
+ * <p>On API 30+ tokens are {@code volumeVersion:generation}, and inserts/updates come from
+ * {@link MediaStore.MediaColumns#GENERATION_ADDED}/{@link MediaStore.MediaColumns#GENERATION_MODIFIED}.
+ * If the volume version changed the client must do a full rescan. MediaStore keeps no tombstones,
+ * so deletions are collected from {@link ContentResolver#NOTIFY_DELETE} notifications while the
+ * observer is registered; {@code deletesComplete} is false when the token predates that.
+ *
+ * <p>Below API 30 tokens are the newest {@code date_modified} in seconds; inserts and updates are
+ * distinguished by {@code date_added}, and deletions are never reported. Seconds are coarse, so
+ * rows modified in the token's second are reported again, as updates, rather than missed.
+ */
+class MediaChangeObserver
+    implements EventChannel.StreamHandler, MediaStoreQuery.AlbumIndexListener {
+  private static final long DEBOUNCE_MILLIS = 300;
+  private static final int MAX_TRACKED_DELETES = 10000;
+  private static final String VOLUME = MediaStoreQuery.VOLUME;
+  private static final String TOKEN_SEPARATOR = MediaStoreQuery.TOKEN_SEPARATOR;
+
+  private final ContentResolver resolver;
+  private final MediaStoreQuery mediaStoreQuery;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  // Deleted id -> generation at the time the delete was observed.
+  private final Map<Long, Long> deletedIds =
+      new LinkedHashMap<Long, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+          if (size() > MAX_TRACKED_DELETES) {
+            // Older deletes are lost, so anything before the next entry is incomplete.
+            trackingSinceGeneration = Math.max(trackingSinceGeneration, eldest.getValue() + 1);
+            return true;
+          }
+          return false;
+        }
+      };
+
+  @Nullable private EventChannel.EventSink events;
+  private ContentObserver observer;
+  // Guarded by deletedIds.
+  private long trackingSinceGeneration = Long.MAX_VALUE;
+
+  private final Runnable emitChange =
+      new Runnable() {
+        @Override
+        public void run() {
+          // Keep the album index current so the next album list is served exact.
+          mediaStoreQuery.reconcileAlbumIndex();
+          mediaStoreQuery.execute(
+              new Runnable() {
+                @Override
+                public void run() {
+                  emitToken();
+                }
+              });
+        }
+      };
+
+  MediaChangeObserver(ContentResolver resolver, MediaStoreQuery mediaStoreQuery) {
+    this.resolver = resolver;
+    this.mediaStoreQuery = mediaStoreQuery;
+  }
+
+  @Override
+  public void onListen(Object arguments, EventChannel.EventSink events) {
+    this.events = events;
+    if (observer != null) {
+      return;
+    }
+    observer =
+        new ContentObserver(handler) {
+          @Override
+          public void onChange(boolean selfChange, @Nullable Uri uri) {
+            scheduleEmit();
+          }
+
+          @Override
+          public void onChange(
+              boolean selfChange, @NonNull Collection<Uri> uris, int flags) {
+            if ((flags & ContentResolver.NOTIFY_DELETE) != 0) {
+              recordDeletes(uris);
+            }
+            scheduleEmit();
+          }
+        };
+    resolver.registerContentObserver(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, true, observer);
+    resolver.registerContentObserver(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, true, observer);
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+      mediaStoreQuery.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              long generation = MediaStore.getGeneration(resolver, VOLUME);
+              synchronized (deletedIds) {
+                trackingSinceGeneration = Math.min(trackingSinceGeneration, generation);
+              }
+            }
+          });
+    }
+  }
+
+  @Override
+  public void onCancel(Object arguments) {
+    events = null;
+    dispose();
+  }
+
+  void dispose() {
+    handler.removeCallbacks(emitChange);
+    if (observer != null) {
+      resolver.unregisterContentObserver(observer);
+      observer = null;
+    }
+    synchronized (deletedIds) {
+      deletedIds.clear();
+      trackingSinceGeneration = Long.MAX_VALUE;
+    }
+  }
+
+  @Override
+  public void onAlbumIndexChanged() {
+    emitToken();
+  }
+
+  /** Must run off the main thread. */
+  private void emitToken() {
+    final String token = mediaStoreQuery.currentToken();
+    handler.post(
+        new Runnable() {
+          @Override
+          public void run() {
+            if (events != null) {
+              events.success(token);
+            }
+          }
+        });
+  }
+
+  void getMediaChanges(MethodCall call, final MethodChannel.Result result) {
+    final String token = call.argument("token");
+    mediaStoreQuery.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              result.success(queryChanges(token));
+            } catch (SecurityException e) {
+              result.error("photo_access_denied", e.getMessage(), null);
+            } catch (RuntimeException e) {
+              result.error("query_failed", e.getMessage(), null);
+            }
+          }
+        });
+  }
+
+  private void scheduleEmit() {
+    handler.removeCallbacks(emitChange);
+    handler.postDelayed(emitChange, DEBOUNCE_MILLIS);
+  }
+
+  private void recordDeletes(Collection<Uri> uris) {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+      return;
+    }
+    final List<Long> ids = new ArrayList<>();
+    for (Uri uri : uris) {
+      try {
+        ids.add(ContentUris.parseId(uri));
+      } catch (RuntimeException ignored) {
+        // A collection-level notification carries no id.
+      }
+    }
+    if (ids.isEmpty()) {
+      return;
+    }
+    mediaStoreQuery.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            long generation = MediaStore.getGeneration(resolver, VOLUME);
+            synchronized (deletedIds) {
+              for (Long id : ids) {
+                deletedIds.remove(id);
+                deletedIds.put(id, generation);
+              }
+            }
+          }
+        });
+  }
+
+  private Map<String, Object> queryChanges(@Nullable String token) {
+    String newToken = mediaStoreQuery.currentToken();
+    Map<String, Object> changes = new HashMap<>();
+    changes.put("token", newToken);
+
+    Long since = parseSince(token);
+    if (since == null) {
+      changes.put("reset", true);
+      return changes;
+    }
+
+    boolean generations = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R;
+    String modifiedColumn =
+        generations
+            ? MediaStore.MediaColumns.GENERATION_MODIFIED
+            : MediaStore.MediaColumns.DATE_MODIFIED;
+    String addedColumn =
+        generations ? MediaStore.MediaColumns.GENERATION_ADDED : MediaStore.MediaColumns.DATE_ADDED;
+    // A second can hold edits made after the token was read; a generation cannot.
+    String modifiedSince = generations ? ">?" : ">=?";
+
+    List<Long> inserted = new ArrayList<>();
+    List<Long> updated = new ArrayList<>();
+    Cursor cursor =
+        mediaStoreQuery.query(
+            new String[] {MediaStore.MediaColumns._ID, addedColumn},
+            MediaStoreQuery.mediaTypeSelection(null) + " AND " + modifiedColumn + modifiedSince,
+            new String[] {String.valueOf(since)},
+            MediaStore.MediaColumns._ID + " ASC",
+            0);
+    if (cursor != null) {
+      try {
+        while (cursor.moveToNext()) {
+          if (cursor.getLong(1) > since) {
+            inserted.add(cursor.getLong(0));
+          } else {
+            updated.add(cursor.getLong(0));
+          }
+        }
+      } finally {
+        cursor.close();
+      }
+    }
+
+    List<Long> deleted = new ArrayList<>();
+    boolean deletesComplete = false;
+    if (generations) {
+      synchronized (deletedIds) {
+        for (Map.Entry<Long, Long> entry : deletedIds.entrySet()) {
+          if (entry.getValue() >= since) {
+            deleted.add(entry.getKey());
+          }
+        }
+        deletesComplete = since >= trackingSinceGeneration;
+      }
+      inserted.removeAll(deleted);
+      updated.removeAll(deleted);
+    }
+
+    changes.put("reset", false);
+    changes.put("inserted", toArray(inserted));
+    changes.put("updated", toArray(updated));
+    changes.put("deleted", toArray(deleted));
+    changes.put("deletesComplete", deletesComplete);
+    return changes;
+  }
+
+  /** Returns the generation or timestamp encoded in a token, or null if a rescan is needed. */
+  @Nullable
+  private Long parseSince(@Nullable String token) {
+    if (token == null) {
+      return null;
+    }
+    try {
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+        int separator = token.lastIndexOf(TOKEN_SEPARATOR);
+        if (separator < 0
+            || !token.substring(0, separator).equals(MediaStore.getVersion(resolver, VOLUME))) {
+          return null;
+        }
+        return Long.parseLong(token.substring(separator + 1));
+      }
+      return token.contains(TOKEN_SEPARATOR) ? null : Long.parseLong(token);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static long[] toArray(List<Long> values) {
+    long[] array = new long[values.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = values.get(i);
+    }
+    return array;
+  }
+}
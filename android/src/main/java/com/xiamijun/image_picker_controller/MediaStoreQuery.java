@@ -0,0 +1,552 @@
+package com.xiamijun.image_picker_controller;
+
+import android.Manifest;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Process;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Reads albums and pages of assets straight from {@link MediaStore} for Dart-side galleries.
+ *
+ * <p>All queries run on a single background thread so that pages are served in the order they
+ * were requested. Pages are keyset-paginated on {@code (date_added DESC, _id DESC)}: the last row
+ * of a page is returned as the cursor of the next one, so deep pages cost the same as the first.
+ *
+ * <p>Pages are encoded column-wise with primitive arrays, which the standard message codec writes
+ * as typed data instead of one map per asset.
+ *
+ * <p>Album lists are served from an {@link AlbumIndexCache} when one exists and reconciled against
+ * MediaStore afterwards, so the first album shows up without a full scan. Reconciliation runs on
+ * its own background-priority thread, so pages requested right after a cached album list never
+ * wait behind a rescan, and at most one reconciliation is queued at a time. The index is only
+ * served while the app can read the media it describes; it is wiped once that access is revoked.
+ */
+class MediaStoreQuery {
+  private static final String TAG = "MediaStoreQuery";
+
+  static final String MEDIA_TYPE_IMAGE = "image";
+  static final String MEDIA_TYPE_VIDEO = "video";
+
+  static final String ALL_ALBUM_ID = "";
+
+  static final String VOLUME = "external";
+  static final String TOKEN_SEPARATOR = ":";
+
+  private static final int DEFAULT_PAGE_SIZE = 100;
+  private static final String COLUMN_BUCKET_ID = "bucket_id";
+  private static final String COLUMN_BUCKET_DISPLAY_NAME = "bucket_display_name";
+  private static final String COLUMN_DURATION = "duration";
+  private static final String ORDER_BY =
+      MediaStore.MediaColumns.DATE_ADDED + " DESC, " + MediaStore.MediaColumns._ID + " DESC";
+
+  private static final String[] ALBUM_PROJECTION = {
+    MediaStore.MediaColumns._ID,
+    MediaStore.Files.FileColumns.MEDIA_TYPE,
+    COLUMN_BUCKET_ID,
+    COLUMN_BUCKET_DISPLAY_NAME,
+  };
+
+  private static final String[] ASSET_PROJECTION = {
+    MediaStore.MediaColumns._ID,
+    MediaStore.Files.FileColumns.MEDIA_TYPE,
+    MediaStore.MediaColumns.MIME_TYPE,
+    MediaStore.MediaColumns.SIZE,
+    MediaStore.MediaColumns.WIDTH,
+    MediaStore.MediaColumns.HEIGHT,
+    MediaStore.MediaColumns.DATE_ADDED,
+    COLUMN_DURATION,
+  };
+
+  interface AlbumIndexListener {
+    /** Called on the reconcile thread when a reconciliation changed a cached album list. */
+    void onAlbumIndexChanged();
+  }
+
+  private final Context context;
+  private final ContentResolver resolver;
+  private final AlbumIndexCache albumIndex;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final ExecutorService reconcileExecutor = Executors.newSingleThreadExecutor();
+  private final AtomicBoolean reconcileQueued = new AtomicBoolean();
+  @Nullable private volatile AlbumIndexListener albumIndexListener;
+
+  MediaStoreQuery(Context context) {
+    this.context = context;
+    this.resolver = context.getContentResolver();
+    this.albumIndex = new AlbumIndexCache(context);
+  }
+
+  void setAlbumIndexListener(@Nullable AlbumIndexListener listener) {
+    albumIndexListener = listener;
+  }
+
+  void getAlbums(MethodCall call, final MethodChannel.Result result) {
+    final String mediaType = call.argument("mediaType");
+    final boolean allowCached = !Boolean.FALSE.equals(call.argument("allowCached"));
+    final long start = SystemClock.elapsedRealtime();
+    executor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              if (!canReadMedia(mediaType)) {
+                // Never serve names or covers the user has taken access to away.
+                albumIndex.clear();
+                result.error("photo_access_denied", "No read access to " + mediaType, null);
+                return;
+              }
+              String key = albumIndexKey(mediaType);
+              AlbumIndexCache.Entry cached = allowCached ? albumIndex.get(key) : null;
+              if (cached != null) {
+                result.success(cached.albums);
+                Log.d(
+                    TAG,
+                    "albums from index in " + (SystemClock.elapsedRealtime() - start) + "ms");
+                reconcileAlbumIndex();
+                return;
+              }
+              result.success(scanAlbums(mediaType));
+              Log.d(TAG, "albums scanned in " + (SystemClock.elapsedRealtime() - start) + "ms");
+            } catch (SecurityException e) {
+              result.error("photo_access_denied", e.getMessage(), null);
+            } catch (RuntimeException e) {
+              result.error("query_failed", e.getMessage(), null);
+            }
+          }
+        });
+  }
+
+  void getAssetPage(MethodCall call, final MethodChannel.Result result) {
+    final String mediaType = call.argument("mediaType");
+    final String albumId = call.argument("albumId");
+    final Integer pageSize = call.argument("pageSize");
+    final Number afterDate = call.argument("afterDate");
+    final Number afterId = call.argument("afterId");
+    executor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              result.success(
+                  queryAssetPage(
+                      mediaType,
+                      albumId,
+                      pageSize == null ? DEFAULT_PAGE_SIZE : pageSize,
+                      afterDate == null ? null : afterDate.longValue(),
+                      afterId == null ? null : afterId.longValue()));
+            } catch (SecurityException e) {
+              result.error("photo_access_denied", e.getMessage(), null);
+            } catch (RuntimeException e) {
+              result.error("query_failed", e.getMessage(), null);
+            }
+          }
+        });
+  }
+
+  /**
+   * Brings every cached album list up to date in the background. Requests made while one is
+   * already queued are folded into it. Cheap when nothing changed, since the stored index token
+   * still matches.
+   */
+  void reconcileAlbumIndex() {
+    if (!reconcileQueued.compareAndSet(false, true)) {
+      return;
+    }
+    reconcileExecutor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            // Cleared first, so a change arriving during this pass queues another one.
+            reconcileQueued.set(false);
+            try {
+              AlbumIndexListener listener = albumIndexListener;
+              if (reconcileAlbumIndexNow() && listener != null) {
+                listener.onAlbumIndexChanged();
+              }
+            } catch (RuntimeException e) {
+              Log.w(TAG, "Unable to reconcile album index", e);
+            }
+          }
+        });
+  }
+
+  /** Must run on the reconcile thread. Returns true when a cached album list changed. */
+  private boolean reconcileAlbumIndexNow() {
+    if (!albumIndex.exists()) {
+      return false;
+    }
+    boolean changed = false;
+    String token = indexToken();
+    for (String key : albumIndex.keys()) {
+      String mediaType = mediaTypeFromKey(key);
+      if (!canReadMedia(mediaType)) {
+        albumIndex.clear();
+        return true;
+      }
+      AlbumIndexCache.Entry entry = albumIndex.get(key);
+      if (entry != null && entry.token.equals(token)) {
+        continue;
+      }
+      List<Map<String, Object>> albums = queryAlbums(mediaType);
+      if (entry == null || !entry.albums.equals(albums)) {
+        changed = true;
+      }
+      albumIndex.put(key, token, albums);
+    }
+    return changed;
+  }
+
+  /** Runs work on the query thread, after any query already submitted. */
+  void execute(Runnable runnable) {
+    executor.execute(runnable);
+  }
+
+  void dispose() {
+    executor.shutdownNow();
+    reconcileExecutor.shutdownNow();
+  }
+
+  private List<Map<String, Object>> scanAlbums(@Nullable String mediaType) {
+    String token = indexToken();
+    List<Map<String, Object>> albums = queryAlbums(mediaType);
+    albumIndex.put(albumIndexKey(mediaType), token, albums);
+    return albums;
+  }
+
+  private static String albumIndexKey(@Nullable String mediaType) {
+    return mediaType == null ? "all" : mediaType;
+  }
+
+  @Nullable
+  private static String mediaTypeFromKey(String key) {
+    return "all".equals(key) ? null : key;
+  }
+
+  /**
+   * Token the album index is stamped with. On API 30+ this is {@link #currentToken()}. Below it,
+   * the newest {@code date_modified} cannot see deletions, so the row count is added to it: a
+   * delete changes the count, and an insert or edit moves the newest {@code date_modified}.
+   */
+  private String indexToken() {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+      return currentToken();
+    }
+    Cursor cursor =
+        query(
+            new String[] {MediaStore.MediaColumns.DATE_MODIFIED},
+            mediaTypeSelection(null),
+            null,
+            MediaStore.MediaColumns.DATE_MODIFIED + " DESC",
+            0);
+    int count = 0;
+    long newest = 0;
+    if (cursor != null) {
+      try {
+        count = cursor.getCount();
+        if (cursor.moveToFirst()) {
+          newest = cursor.getLong(0);
+        }
+      } finally {
+        cursor.close();
+      }
+    }
+    return count + TOKEN_SEPARATOR + newest;
+  }
+
+  /** Whether the app may currently read the given media type, or both when it is null. */
+  private boolean canReadMedia(@Nullable String mediaType) {
+    // READ_MEDIA_IMAGES and READ_MEDIA_VIDEO replace READ_EXTERNAL_STORAGE on API 33.
+    if (Build.VERSION.SDK_INT < 33) {
+      return isGranted(Manifest.permission.READ_EXTERNAL_STORAGE);
+    }
+    if (MEDIA_TYPE_IMAGE.equals(mediaType)) {
+      return isGranted("android.permission.READ_MEDIA_IMAGES");
+    }
+    if (MEDIA_TYPE_VIDEO.equals(mediaType)) {
+      return isGranted("android.permission.READ_MEDIA_VIDEO");
+    }
+    return isGranted("android.permission.READ_MEDIA_IMAGES")
+        && isGranted("android.permission.READ_MEDIA_VIDEO");
+  }
+
+  private boolean isGranted(String permission) {
+    return ContextCompat.checkSelfPermission(context, permission)
+        == PackageManager.PERMISSION_GRANTED;
+  }
+
+  /**
+   * Change token of the media collections: {@code volumeVersion:generation} on API 30+, otherwise
+   * the newest {@code date_modified} in seconds.
+   */
+  String currentToken() {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+      return MediaStore.getVersion(resolver, VOLUME)
+          + TOKEN_SEPARATOR
+          + MediaStore.getGeneration(resolver, VOLUME);
+    }
+    Cursor cursor =
+        query(
+            new String[] {MediaStore.MediaColumns.DATE_MODIFIED},
+            mediaTypeSelection(null),
+            null,
+            MediaStore.MediaColumns.DATE_MODIFIED + " DESC",
+            1);
+    long newest = 0;
+    if (cursor != null) {
+      try {
+        if (cursor.moveToFirst()) {
+          newest = cursor.getLong(0);
+        }
+      } finally {
+        cursor.close();
+      }
+    }
+    return String.valueOf(newest);
+  }
+
+  List<Map<String, Object>> queryAlbums(@Nullable String mediaType) {
+    Map<String, Map<String, Object>> albums = new LinkedHashMap<>();
+    int total = 0;
+    long allCoverId = -1;
+    int allCoverType = 0;
+
+    Cursor cursor =
+        query(ALBUM_PROJECTION, mediaTypeSelection(mediaType), null, ORDER_BY, 0);
+    if (cursor != null) {
+      try {
+        int idColumn = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns._ID);
+        int typeColumn = cursor.getColumnIndexOrThrow(MediaStore.Files.FileColumns.MEDIA_TYPE);
+        int bucketColumn = cursor.getColumnIndexOrThrow(COLUMN_BUCKET_ID);
+        int nameColumn = cursor.getColumnIndexOrThrow(COLUMN_BUCKET_DISPLAY_NAME);
+        while (cursor.moveToNext()) {
+          String bucketId = cursor.getString(bucketColumn);
+          if (bucketId == null) {
+            continue;
+          }
+          total++;
+          Map<String, Object> album = albums.get(bucketId);
+          if (album == null) {
+            // Rows arrive newest first, so the first row of each bucket is its cover.
+            album = new HashMap<>();
+            album.put("id", bucketId);
+            album.put("name", cursor.getString(nameColumn));
+            album.put("count", 0);
+            album.put("coverId", cursor.getLong(idColumn));
+            album.put(
+                "coverUri",
+                contentUri(cursor.getInt(typeColumn), cursor.getLong(idColumn)).toString());
+            albums.put(bucketId, album);
+          }
+          album.put("count", (int) album.get("count") + 1);
+          if (allCoverId == -1) {
+            allCoverId = cursor.getLong(idColumn);
+            allCoverType = cursor.getInt(typeColumn);
+          }
+        }
+      } finally {
+        cursor.close();
+      }
+    }
+
+    List<Map<String, Object>> result = new ArrayList<>();
+    Map<String, Object> all = new HashMap<>();
+    all.put("id", ALL_ALBUM_ID);
+    all.put("name", null);
+    all.put("count", total);
+    all.put("coverId", allCoverId);
+    all.put(
+        "coverUri", allCoverId == -1 ? null : contentUri(allCoverType, allCoverId).toString());
+    result.add(all);
+    result.addAll(albums.values());
+    return result;
+  }
+
+  Map<String, Object> queryAssetPage(
+      @Nullable String mediaType,
+      @Nullable String albumId,
+      int pageSize,
+      @Nullable Long afterDate,
+      @Nullable Long afterId) {
+    StringBuilder selection = new StringBuilder(mediaTypeSelection(mediaType));
+    List<String> args = new ArrayList<>();
+    if (albumId != null && !ALL_ALBUM_ID.equals(albumId)) {
+      selection.append(" AND ").append(COLUMN_BUCKET_ID).append("=?");
+      args.add(albumId);
+    }
+    if (afterDate != null && afterId != null) {
+      selection
+          .append(" AND (")
+          .append(MediaStore.MediaColumns.DATE_ADDED)
+          .append("<? OR (")
+          .append(MediaStore.MediaColumns.DATE_ADDED)
+          .append("=? AND ")
+          .append(MediaStore.MediaColumns._ID)
+          .append("<?))");
+      args.add(String.valueOf(afterDate));
+      args.add(String.valueOf(afterDate));
+      args.add(String.valueOf(afterId));
+    }
+
+    // One row past the page tells whether another page exists, without a round-trip to find out.
+    Cursor cursor =
+        query(
+            ASSET_PROJECTION,
+            selection.toString(),
+            args.toArray(new String[0]),
+            ORDER_BY,
+            pageSize + 1);
+    if (cursor == null) {
+      return encodePage(0, false, null);
+    }
+    try {
+      int rows = cursor.getCount();
+      return encodePage(Math.min(rows, pageSize), rows > pageSize, cursor);
+    } finally {
+      cursor.close();
+    }
+  }
+
+  /**
+   * Column-oriented page: one primitive array per field, and mime types dictionary-encoded since a
+   * page rarely contains more than a handful of distinct values. The cursor of the next page is
+   * only set when hasMore.
+   */
+  private static Map<String, Object> encodePage(
+      int count, boolean hasMore, @Nullable Cursor cursor) {
+    long[] ids = new long[count];
+    int[] mediaTypes = new int[count];
+    int[] mimeTypeIndexes = new int[count];
+    long[] sizes = new long[count];
+    int[] widths = new int[count];
+    int[] heights = new int[count];
+    long[] dates = new long[count];
+    long[] durations = new long[count];
+    List<String> mimeTypes = new ArrayList<>();
+    Map<String, Integer> mimeTypeLookup = new HashMap<>();
+
+    if (cursor != null) {
+      int idColumn = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns._ID);
+      int typeColumn = cursor.getColumnIndexOrThrow(MediaStore.Files.FileColumns.MEDIA_TYPE);
+      int mimeColumn = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.MIME_TYPE);
+      int sizeColumn = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.SIZE);
+      int widthColumn = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.WIDTH);
+      int heightColumn = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.HEIGHT);
+      int dateColumn = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATE_ADDED);
+      int durationColumn = cursor.getColumnIndexOrThrow(COLUMN_DURATION);
+      int i = 0;
+      while (i < count && cursor.moveToNext()) {
+        ids[i] = cursor.getLong(idColumn);
+        mediaTypes[i] = cursor.getInt(typeColumn);
+        String mimeType = cursor.getString(mimeColumn);
+        Integer index = mimeTypeLookup.get(mimeType);
+        if (index == null) {
+          index = mimeTypes.size();
+          mimeTypes.add(mimeType);
+          mimeTypeLookup.put(mimeType, index);
+        }
+        mimeTypeIndexes[i] = index;
+        sizes[i] = cursor.getLong(sizeColumn);
+        widths[i] = cursor.getInt(widthColumn);
+        heights[i] = cursor.getInt(heightColumn);
+        dates[i] = cursor.getLong(dateColumn);
+        durations[i] = cursor.getLong(durationColumn);
+        i++;
+      }
+    }
+
+    Map<String, Object> page = new HashMap<>();
+    page.put("imageBaseUri", MediaStore.Images.Media.EXTERNAL_CONTENT_URI.toString());
+    page.put("videoBaseUri", MediaStore.Video.Media.EXTERNAL_CONTENT_URI.toString());
+    page.put("ids", ids);
+    page.put("mediaTypes", mediaTypes);
+    page.put("mimeTypes", mimeTypes);
+    page.put("mimeTypeIndexes", mimeTypeIndexes);
+    page.put("sizes", sizes);
+    page.put("widths", widths);
+    page.put("heights", heights);
+    page.put("dates", dates);
+    page.put("durations", durations);
+    if (hasMore && count > 0) {
+      page.put("nextAfterDate", dates[count - 1]);
+      page.put("nextAfterId", ids[count - 1]);
+    }
+    return page;
+  }
+
+  @Nullable
+  Cursor query(
+      String[] projection,
+      String selection,
+      @Nullable String[] selectionArgs,
+      String sortOrder,
+      int limit) {
+    Uri uri = MediaStore.Files.getContentUri(VOLUME);
+    if (limit <= 0) {
+      return resolver.query(uri, projection, selection, selectionArgs, sortOrder);
+    }
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+      // MediaProvider rejects LIMIT inside the sort order from R onwards, and ignores
+      // QUERY_ARG_LIMIT before it.
+      Bundle queryArgs = new Bundle();
+      queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+      queryArgs.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, selectionArgs);
+      queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, sortOrder);
+      queryArgs.putInt(ContentResolver.QUERY_ARG_LIMIT, limit);
+      return resolver.query(uri, projection, queryArgs, null);
+    }
+    return resolver.query(
+        uri, projection, selection, selectionArgs, sortOrder + " LIMIT " + limit);
+  }
+
+  static String mediaTypeSelection(@Nullable String mediaType) {
+    String column = MediaStore.Files.FileColumns.MEDIA_TYPE;
+    if (MEDIA_TYPE_IMAGE.equals(mediaType)) {
+      return column + "=" + MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE;
+    }
+    if (MEDIA_TYPE_VIDEO.equals(mediaType)) {
+      return column + "=" + MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO;
+    }
+    return "("
+        + column
+        + "="
+        + MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE
+        + " OR "
+        + column
+        + "="
+        + MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO
+        + ")";
+  }
+
+  static Uri contentUri(int mediaType, long id) {
+    Uri base =
+        mediaType == MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO
+            ? MediaStore.Video.Media.EXTERNAL_CONTENT_URI
+            : MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
+    return ContentUris.withAppendedId(base, id);
+  }
+}
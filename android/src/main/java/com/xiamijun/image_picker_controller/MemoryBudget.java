@@ -0,0 +1,64 @@
+package com.xiamijun.image_picker_controller;
+
+import android.app.ActivityManager;
+import android.content.Context;
+
+/**
+ * Admission control for bitmap work that runs in parallel.
+ *
+ * <p>Each job reserves its estimated peak bytes before decoding and releases them when done. A job
+ * that does not fit waits for running jobs to finish, so as many images are processed at once as
+ * memory allows. A job larger than the whole budget is admitted alone rather than never.
+ *
+ * <p>The budget is a fraction of the smaller of {@link Runtime#maxMemory()} and {@link
+ * ActivityManager#getMemoryClass()}, which leaves room for the app itself. On API 26+ bitmap
+ * pixels live in the native heap, but the intermediate {@code int[]} buffers still count against
+ * the Java heap, so the same limit is kept.
+ */
+class MemoryBudget {
+  private static final double HEAP_FRACTION = 0.4;
+
+  private final long capacity;
+  private long used;
+  // Multiplies the sample size of every decode while memory is short; see MemoryPressureMonitor.
+  private volatile int sampleSizeFactor = 1;
+
+  MemoryBudget(Context context) {
+    long limit = Runtime.getRuntime().maxMemory();
+    ActivityManager activityManager =
+        (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+    if (activityManager != null) {
+      limit = Math.min(limit, activityManager.getMemoryClass() * 1024L * 1024L);
+    }
+    capacity = (long) (limit * HEAP_FRACTION);
+  }
+
+  long capacity() {
+    return capacity;
+  }
+
+  int sampleSizeFactor() {
+    return sampleSizeFactor;
+  }
+
+  void setSampleSizeFactor(int sampleSizeFactor) {
+    this.sampleSizeFactor = sampleSizeFactor;
+  }
+
+  synchronized long used() {
+    return used;
+  }
+
+  /** Blocks until bytes fit in the budget, or until nothing else is running. */
+  synchronized void acquire(long bytes) throws InterruptedException {
+    while (used > 0 && used + bytes > capacity) {
+      wait();
+    }
+    used += bytes;
+  }
+
+  synchronized void release(long bytes) {
+    used -= bytes;
+    notifyAll();
+  }
+}
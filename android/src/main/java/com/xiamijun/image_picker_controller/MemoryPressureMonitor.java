@@ -0,0 +1,95 @@
+package com.xiamijun.image_picker_controller;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Map;
+
+/**
+ * Reacts to {@link ComponentCallbacks2#onTrimMemory} while the plugin is attached.
+ *
+ * <p>Under pressure the lite engine's thumbnail cache is trimmed, fewer processing jobs run at once
+ * and images are decoded at a higher sample size. Android does not signal when pressure ends, so
+ * the plugin returns to normal once no signal has arrived for {@link #RECOVERY_DELAY_MS}. Glide
+ * registers its own callbacks and trims its caches and bitmap pool by itself.
+ */
+class MemoryPressureMonitor implements ComponentCallbacks2 {
+  static final String PRESSURE_NONE = "none";
+  static final String PRESSURE_MODERATE = "moderate";
+  static final String PRESSURE_CRITICAL = "critical";
+
+  private static final String LIMIT_REASON = "memory";
+  private static final long RECOVERY_DELAY_MS = 30 * 1000;
+
+  private final ProcessingScheduler processingScheduler;
+  private final MemoryBudget memoryBudget;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  // Only written on the main thread.
+  private volatile String pressure = PRESSURE_NONE;
+  private volatile int lastTrimLevel = -1;
+
+  private final Runnable recover =
+      new Runnable() {
+        @Override
+        public void run() {
+          pressure = PRESSURE_NONE;
+          processingScheduler.clearConcurrencyLimit(LIMIT_REASON);
+          memoryBudget.setSampleSizeFactor(1);
+        }
+      };
+
+  MemoryPressureMonitor(ProcessingScheduler processingScheduler, MemoryBudget memoryBudget) {
+    this.processingScheduler = processingScheduler;
+    this.memoryBudget = memoryBudget;
+  }
+
+  @Override
+  public void onTrimMemory(int level) {
+    lastTrimLevel = level;
+    if (level == TRIM_MEMORY_UI_HIDDEN) {
+      // Sent whenever the app leaves the foreground; not a sign of pressure.
+      return;
+    }
+    LiteImageEngine.trimMemory(level);
+    boolean critical = level == TRIM_MEMORY_RUNNING_CRITICAL || level >= TRIM_MEMORY_MODERATE;
+    if (critical) {
+      enter(PRESSURE_CRITICAL);
+    } else if (!PRESSURE_CRITICAL.equals(pressure)) {
+      enter(PRESSURE_MODERATE);
+    } else {
+      // A milder signal while critical only extends the critical state.
+      enter(PRESSURE_CRITICAL);
+    }
+  }
+
+  @Override
+  public void onLowMemory() {
+    onTrimMemory(TRIM_MEMORY_COMPLETE);
+  }
+
+  @Override
+  public void onConfigurationChanged(Configuration newConfig) {}
+
+  private void enter(String state) {
+    pressure = state;
+    if (PRESSURE_CRITICAL.equals(state)) {
+      processingScheduler.limitConcurrency(LIMIT_REASON, 1);
+      memoryBudget.setSampleSizeFactor(2);
+    } else {
+      processingScheduler.limitConcurrency(LIMIT_REASON, 2);
+    }
+    handler.removeCallbacks(recover);
+    handler.postDelayed(recover, RECOVERY_DELAY_MS);
+  }
+
+  void putMetrics(Map<String, Object> metrics) {
+    metrics.put("memoryPressure", pressure);
+    metrics.put("lastTrimLevel", lastTrimLevel);
+  }
+
+  void dispose() {
+    handler.removeCallbacks(recover);
+  }
+}
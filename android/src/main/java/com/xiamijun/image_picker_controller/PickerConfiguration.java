@@ -1,5 +1,6 @@
 package com.xiamijun.image_picker_controller;
 
+import java.util.List;
 import java.util.Map;
 
 public class PickerConfiguration {
@@ -11,6 +12,47 @@ public class PickerConfiguration {
     public boolean allowPickingOriginalPhoto;
     public boolean allowPickingVideo;
     public boolean allowPickingImage;
+    // 使用不依赖Glide的图片加载引擎，见 LiteImageEngine
+    public boolean useLiteImageEngine;
+    // 图片最大宽高及压缩质量（1-99），为空时返回原图
+    public Double maxWidth;
+    public Double maxHeight;
+    public Integer imageQuality;
+    // 解码时裁剪：[left, top, right, bottom]，按显示方向；cropRectNormalized为true时是0-1的比例
+    public List<Double> cropRect;
+    public boolean cropRectNormalized;
+    // 裁剪宽高比（宽/高）
+    public Double cropAspectRatio;
+    // 按EXIF方向旋转像素，输出图片方向为正常
+    public boolean bakeOrientation;
+    // 视频转码参数，均为空时不转码
+    public Integer transcodeMaxWidth;
+    public Integer transcodeMaxHeight;
+    public Integer transcodeBitrate;
+    public Integer transcodeFrameRate;
+    // 视频裁剪（无损，从关键帧开始），单位毫秒
+    public Integer trimStartMs;
+    public Integer trimEndMs;
+    // 超过videoMaxDuration的视频裁剪到该时长，而不是在相册中隐藏
+    public boolean trimToMaxDuration;
+    // 视频缩略图条：帧数、每帧最长边、是否拼成一张雪碧图
+    public Integer storyboardFrameCount;
+    public Integer storyboardFrameSize;
+    public boolean storyboardSprite = true;
+    // 视频封面时间：毫秒，或时长比例（0-1），均为空时由系统选择
+    public Integer coverTimeMs;
+    public Double coverTimeFraction;
+    // 封面取帧方式："sync"取最近关键帧（快），"closest"取精确帧
+    public String coverSeekMode;
+    // 跳过过暗的封面帧
+    public boolean skipDarkCoverFrames;
+    // 处理配置："auto"（默认，低内存设备自动启用lowMemory）、"standard"、"lowMemory"
+    public String processingProfile;
+    // 结果形式："path"（默认，处理后的文件路径）、"handle"（轻量句柄，不拷贝文件，按需materializeAsset）、
+    // "bytes"（处理后的图片直接以字节返回，不写文件；不含EXIF，因此总是按EXIF方向旋转像素）
+    public String resultMode;
+    // "bytes"模式下以字节返回的最大大小，超过时写入文件返回路径，为空时4MB
+    public Integer maxInlineBytes;
 
     public static PickerConfiguration fromMap(Map map) {
 
@@ -43,6 +85,43 @@ public class PickerConfiguration {
         if (map.get("allowPickingImage") != null) {
             config.allowPickingImage = (boolean) map.get("allowPickingImage");
         }
+        if (map.get("useLiteImageEngine") != null) {
+            config.useLiteImageEngine = (boolean) map.get("useLiteImageEngine");
+        }
+        config.maxWidth = (Double) map.get("maxWidth");
+        config.maxHeight = (Double) map.get("maxHeight");
+        config.imageQuality = (Integer) map.get("imageQuality");
+        config.cropRect = (List<Double>) map.get("cropRect");
+        if (map.get("cropRectNormalized") != null) {
+            config.cropRectNormalized = (boolean) map.get("cropRectNormalized");
+        }
+        config.cropAspectRatio = (Double) map.get("cropAspectRatio");
+        if (map.get("bakeOrientation") != null) {
+            config.bakeOrientation = (boolean) map.get("bakeOrientation");
+        }
+        config.transcodeMaxWidth = (Integer) map.get("transcodeMaxWidth");
+        config.transcodeMaxHeight = (Integer) map.get("transcodeMaxHeight");
+        config.transcodeBitrate = (Integer) map.get("transcodeBitrate");
+        config.transcodeFrameRate = (Integer) map.get("transcodeFrameRate");
+        config.trimStartMs = (Integer) map.get("trimStartMs");
+        config.trimEndMs = (Integer) map.get("trimEndMs");
+        if (map.get("trimToMaxDuration") != null) {
+            config.trimToMaxDuration = (boolean) map.get("trimToMaxDuration");
+        }
+        config.storyboardFrameCount = (Integer) map.get("storyboardFrameCount");
+        config.storyboardFrameSize = (Integer) map.get("storyboardFrameSize");
+        if (map.get("storyboardSprite") != null) {
+            config.storyboardSprite = (boolean) map.get("storyboardSprite");
+        }
+        config.coverTimeMs = (Integer) map.get("coverTimeMs");
+        config.coverTimeFraction = (Double) map.get("coverTimeFraction");
+        config.coverSeekMode = (String) map.get("coverSeekMode");
+        if (map.get("skipDarkCoverFrames") != null) {
+            config.skipDarkCoverFrames = (boolean) map.get("skipDarkCoverFrames");
+        }
+        config.processingProfile = (String) map.get("processingProfile");
+        config.resultMode = (String) map.get("resultMode");
+        config.maxInlineBytes = (Integer) map.get("maxInlineBytes");
         return config;
     }
 
@@ -57,6 +136,31 @@ public class PickerConfiguration {
                 ", allowPickingOriginalPhoto=" + allowPickingOriginalPhoto +
                 ", allowPickingVideo=" + allowPickingVideo +
                 ", allowPickingImage=" + allowPickingImage +
+                ", useLiteImageEngine=" + useLiteImageEngine +
+                ", maxWidth=" + maxWidth +
+                ", maxHeight=" + maxHeight +
+                ", imageQuality=" + imageQuality +
+                ", cropRect=" + cropRect +
+                ", cropRectNormalized=" + cropRectNormalized +
+                ", cropAspectRatio=" + cropAspectRatio +
+                ", bakeOrientation=" + bakeOrientation +
+                ", transcodeMaxWidth=" + transcodeMaxWidth +
+                ", transcodeMaxHeight=" + transcodeMaxHeight +
+                ", transcodeBitrate=" + transcodeBitrate +
+                ", transcodeFrameRate=" + transcodeFrameRate +
+                ", trimStartMs=" + trimStartMs +
+                ", trimEndMs=" + trimEndMs +
+                ", trimToMaxDuration=" + trimToMaxDuration +
+                ", storyboardFrameCount=" + storyboardFrameCount +
+                ", storyboardFrameSize=" + storyboardFrameSize +
+                ", storyboardSprite=" + storyboardSprite +
+                ", coverTimeMs=" + coverTimeMs +
+                ", coverTimeFraction=" + coverTimeFraction +
+                ", coverSeekMode='" + coverSeekMode + '\'' +
+                ", skipDarkCoverFrames=" + skipDarkCoverFrames +
+                ", processingProfile='" + processingProfile + '\'' +
+                ", resultMode='" + resultMode + '\'' +
+                ", maxInlineBytes=" + maxInlineBytes +
                 '}';
     }
 }
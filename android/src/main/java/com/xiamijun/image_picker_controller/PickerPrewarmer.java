@@ -0,0 +1,160 @@
+package com.xiamijun.image_picker_controller;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.request.target.Target;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Loads the first page of the gallery before the picker is opened.
+ *
+ * <p>PictureSelector only starts its media scan once its activity is up, so the first grid
+ * frame waits for a query plus a decode per cell. Prewarming runs the same first-page query
+ * (newest first, same page size) and decodes those thumbnails into the memory cache of the image
+ * engine the picker will use, with the same url form, size and transformation as {@code
+ * loadGridImage}, so the grid binds from memory.
+ *
+ * <p>Nothing is allocated until {@link #prewarm} is called, and {@link #cancel} drops queued work:
+ * Glide preloads are cleared and {@link LiteImageEngine} decodes not yet started are cancelled.
+ */
+class PickerPrewarmer {
+  // PictureSelector's first page (PictureConfig.MAX_PAGE_SIZE).
+  private static final int FIRST_PAGE_SIZE = 60;
+
+  private final Context context;
+  private final MediaStoreQuery mediaStoreQuery;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final List<Target<?>> glideTargets = new ArrayList<>();
+  private final List<Future<?>> liteDecodes = new ArrayList<>();
+  // Incremented on cancel so that a query already running drops its results.
+  private volatile int generation;
+
+  PickerPrewarmer(Context context, MediaStoreQuery mediaStoreQuery) {
+    this.context = context.getApplicationContext();
+    this.mediaStoreQuery = mediaStoreQuery;
+  }
+
+  void prewarm(MethodCall call, MethodChannel.Result result) {
+    final PickerConfiguration config = PickerConfiguration.fromMap((Map) call.arguments());
+    final String mediaType =
+        config.allowPickingVideo && !config.allowPickingImage
+            ? MediaStoreQuery.MEDIA_TYPE_VIDEO
+            : MediaStoreQuery.MEDIA_TYPE_IMAGE;
+    final ProcessingProfile profile = ProcessingProfile.forConfiguration(config, context);
+    cancel();
+    final int token = generation;
+    mediaStoreQuery.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            if (token != generation) {
+              return;
+            }
+            final List<String> urls;
+            try {
+              urls = queryFirstPage(mediaType);
+            } catch (RuntimeException e) {
+              return;
+            }
+            handler.post(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    if (token == generation) {
+                      warm(urls, config.useLiteImageEngine, profile.thumbnailSize);
+                    }
+                  }
+                });
+          }
+        });
+    // Prewarming is best effort; the caller never waits for it.
+    result.success(null);
+  }
+
+  void cancel() {
+    generation++;
+    for (Future<?> decode : liteDecodes) {
+      decode.cancel(false);
+    }
+    liteDecodes.clear();
+    if (glideTargets.isEmpty()) {
+      return;
+    }
+    RequestManager glide = Glide.with(context);
+    for (Target<?> target : glideTargets) {
+      glide.clear(target);
+    }
+    glideTargets.clear();
+  }
+
+  private void warm(List<String> urls, boolean useLiteImageEngine, int gridSize) {
+    if (useLiteImageEngine || !GlideEngine.isAvailable()) {
+      LiteImageEngine engine = LiteImageEngine.createLiteImageEngine();
+      engine.setGridSize(gridSize);
+      for (String url : urls) {
+        Future<?> decode = engine.preloadGridImage(context, url);
+        if (decode != null) {
+          liteDecodes.add(decode);
+        }
+      }
+      return;
+    }
+    RequestManager glide = Glide.with(context);
+    for (String url : urls) {
+      // Must match GlideEngine.loadGridImage for the memory cache key to hit.
+      glideTargets.add(glide.load(url).override(gridSize, gridSize).centerCrop().preload());
+    }
+  }
+
+  /** Urls in the form PictureSelector hands to the image engine. */
+  private List<String> queryFirstPage(String mediaType) {
+    boolean androidQ = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q;
+    String[] projection =
+        androidQ
+            ? new String[] {MediaStore.MediaColumns._ID}
+            : new String[] {MediaStore.MediaColumns._ID, MediaStore.MediaColumns.DATA};
+    Cursor cursor =
+        mediaStoreQuery.query(
+            projection,
+            MediaStoreQuery.mediaTypeSelection(mediaType)
+                + " AND "
+                + MediaStore.MediaColumns.SIZE
+                + ">0",
+            null,
+            MediaStore.MediaColumns._ID + " DESC",
+            FIRST_PAGE_SIZE);
+    List<String> urls = new ArrayList<>();
+    if (cursor == null) {
+      return urls;
+    }
+    try {
+      while (urls.size() < FIRST_PAGE_SIZE && cursor.moveToNext()) {
+        urls.add(
+            androidQ
+                ? MediaStore.Files.getContentUri(MediaStoreQuery.VOLUME)
+                    .buildUpon()
+                    .appendPath(String.valueOf(cursor.getLong(0)))
+                    .build()
+                    .toString()
+                : cursor.getString(1));
+      }
+    } finally {
+      cursor.close();
+    }
+    return urls;
+  }
+}
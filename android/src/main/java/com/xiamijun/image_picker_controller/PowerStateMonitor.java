@@ -0,0 +1,126 @@
+package com.xiamijun.image_picker_controller;
+
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.PowerManager;
+
+import androidx.annotation.Nullable;
+
+import java.util.Map;
+
+/**
+ * Throttles processing while the device is hot or saving battery.
+ *
+ * <p>A phone that keeps all cores busy on a large batch heats up and gets throttled by the kernel
+ * anyway, at unpredictable points. Reading {@link PowerManager#getCurrentThermalStatus()} (API
+ * 29+) and battery saver (API 21+) lets the plugin slow down first: from {@code MODERATE}, or in
+ * battery saver, two jobs run at once and non-urgent work is deferred; from {@code SEVERE} one job
+ * runs. Both are re-evaluated on every change, and the decision is reported in the metrics.
+ */
+class PowerStateMonitor {
+  static final String THROTTLE_NONE = "none";
+  static final String THROTTLE_REDUCED = "reduced";
+  static final String THROTTLE_MINIMAL = "minimal";
+
+  private static final String LIMIT_REASON = "power";
+  // PowerManager.THERMAL_STATUS_MODERATE and THERMAL_STATUS_SEVERE, readable below API 29.
+  private static final int THERMAL_MODERATE = 2;
+  private static final int THERMAL_SEVERE = 3;
+
+  private final Context context;
+  private final ProcessingScheduler processingScheduler;
+  @Nullable private final PowerManager powerManager;
+  @Nullable private BroadcastReceiver powerSaveReceiver;
+  @Nullable private ThermalListener thermalListener;
+  // Only written on the main thread.
+  private volatile int thermalStatus = -1;
+  private volatile boolean powerSaveMode;
+  private volatile String throttle = THROTTLE_NONE;
+
+  PowerStateMonitor(Context context, ProcessingScheduler processingScheduler) {
+    this.context = context.getApplicationContext();
+    this.processingScheduler = processingScheduler;
+    this.powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+  }
+
+  /** Reads the current state and starts listening for changes; call on the main thread. */
+  void start() {
+    if (powerManager == null) {
+      return;
+    }
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+      powerSaveReceiver =
+          new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+              update();
+            }
+          };
+      context.registerReceiver(
+          powerSaveReceiver, new IntentFilter(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED));
+    }
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+      thermalListener = new ThermalListener(this);
+      powerManager.addThermalStatusListener(thermalListener);
+    }
+    update();
+  }
+
+  private void update() {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+      powerSaveMode = powerManager.isPowerSaveMode();
+    }
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+      thermalStatus = powerManager.getCurrentThermalStatus();
+    }
+    if (thermalStatus >= THERMAL_SEVERE) {
+      throttle = THROTTLE_MINIMAL;
+      processingScheduler.limitConcurrency(LIMIT_REASON, 1);
+      processingScheduler.deferNonUrgentWork(LIMIT_REASON);
+    } else if (thermalStatus >= THERMAL_MODERATE || powerSaveMode) {
+      throttle = THROTTLE_REDUCED;
+      processingScheduler.limitConcurrency(LIMIT_REASON, 2);
+      processingScheduler.deferNonUrgentWork(LIMIT_REASON);
+    } else {
+      throttle = THROTTLE_NONE;
+      processingScheduler.clearConcurrencyLimit(LIMIT_REASON);
+      processingScheduler.resumeNonUrgentWork(LIMIT_REASON);
+    }
+  }
+
+  void putMetrics(Map<String, Object> metrics) {
+    metrics.put("thermalStatus", thermalStatus);
+    metrics.put("powerSaveMode", powerSaveMode);
+    metrics.put("powerThrottle", throttle);
+  }
+
+  void dispose() {
+    if (powerSaveReceiver != null) {
+      context.unregisterReceiver(powerSaveReceiver);
+      powerSaveReceiver = null;
+    }
+    if (thermalListener != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+      powerManager.removeThermalStatusListener(thermalListener);
+      thermalListener = null;
+    }
+  }
+
+  /** Kept in its own class so the listener interface is only loaded on API 29+. */
+  @TargetApi(Build.VERSION_CODES.Q)
+  private static class ThermalListener implements PowerManager.OnThermalStatusChangedListener {
+    private final PowerStateMonitor monitor;
+
+    ThermalListener(PowerStateMonitor monitor) {
+      this.monitor = monitor;
+    }
+
+    @Override
+    public void onThermalStatusChanged(int status) {
+      monitor.update();
+    }
+  }
+}
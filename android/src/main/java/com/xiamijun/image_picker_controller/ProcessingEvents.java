@@ -0,0 +1,58 @@
+package com.xiamijun.image_picker_controller;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.plugin.common.EventChannel;
+
+/**
+ * Stream of processing events (progress and per-item results) sent to Dart.
+ *
+ * <p>Events are dropped while nobody listens. Every event is a map with an {@code "event"} type
+ * key; {@link #send} may be called from any thread.
+ */
+class ProcessingEvents implements EventChannel.StreamHandler {
+  static final String EVENT_TRANSCODE_PROGRESS = "transcodeProgress";
+  // A storyboard deferred while the device was hot or saving battery.
+  static final String EVENT_STORYBOARD = "storyboard";
+  // The source paths of a batch, sent before any item is processed.
+  static final String EVENT_BATCH_STARTED = "batchStarted";
+  // One processed image, sent as soon as it is ready.
+  static final String EVENT_IMAGE_READY = "imageReady";
+
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  @Nullable private EventChannel.EventSink events;
+
+  @Override
+  public void onListen(Object arguments, EventChannel.EventSink events) {
+    this.events = events;
+  }
+
+  @Override
+  public void onCancel(Object arguments) {
+    events = null;
+  }
+
+  static Map<String, Object> event(String type) {
+    Map<String, Object> event = new HashMap<>();
+    event.put("event", type);
+    return event;
+  }
+
+  void send(final Map<String, Object> event) {
+    mainHandler.post(
+        new Runnable() {
+          @Override
+          public void run() {
+            if (events != null) {
+              events.success(event);
+            }
+          }
+        });
+  }
+}
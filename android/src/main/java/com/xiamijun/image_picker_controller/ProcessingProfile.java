@@ -0,0 +1,75 @@
+package com.xiamijun.image_picker_controller;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import androidx.annotation.Nullable;
+
+/**
+ * How much memory and parallelism post-pick processing may use.
+ *
+ * <p>{@link #LOW_MEMORY} is meant for 1-2 GB devices: opaque images are decoded as RGB_565,
+ * decodes are capped at {@link #maxDecodePixels}, jobs run one at a time, thumbnails in the picker
+ * are smaller, area-averaged downscaling (which copies the bitmap into an {@code int[]}) is
+ * replaced by a filtered scale, and optional work such as storyboards is skipped. With {@code
+ * "auto"}, or no profile given, it is chosen when {@link ActivityManager#isLowRamDevice()}.
+ */
+class ProcessingProfile {
+  static final String NAME_STANDARD = "standard";
+  static final String NAME_LOW_MEMORY = "lowMemory";
+
+  static final ProcessingProfile STANDARD =
+      new ProcessingProfile(NAME_STANDARD, null, 0, false, 200, true, true);
+  static final ProcessingProfile LOW_MEMORY =
+      new ProcessingProfile(
+          NAME_LOW_MEMORY, Bitmap.Config.RGB_565, 8 * 1024 * 1024, true, 120, false, false);
+
+  final String name;
+  // Decode config for images without alpha; null keeps the platform default.
+  @Nullable final Bitmap.Config opaqueDecodeConfig;
+  // Largest decoded bitmap, in pixels; 0 for no cap.
+  final long maxDecodePixels;
+  final boolean sequential;
+  // Edge of the picker grid thumbnails.
+  final int thumbnailSize;
+  final boolean areaAveraging;
+  final boolean optionalWork;
+
+  private ProcessingProfile(
+      String name,
+      @Nullable Bitmap.Config opaqueDecodeConfig,
+      long maxDecodePixels,
+      boolean sequential,
+      int thumbnailSize,
+      boolean areaAveraging,
+      boolean optionalWork) {
+    this.name = name;
+    this.opaqueDecodeConfig = opaqueDecodeConfig;
+    this.maxDecodePixels = maxDecodePixels;
+    this.sequential = sequential;
+    this.thumbnailSize = thumbnailSize;
+    this.areaAveraging = areaAveraging;
+    this.optionalWork = optionalWork;
+  }
+
+  static ProcessingProfile forConfiguration(PickerConfiguration config, Context context) {
+    if (NAME_STANDARD.equals(config.processingProfile)) {
+      return STANDARD;
+    }
+    if (NAME_LOW_MEMORY.equals(config.processingProfile)) {
+      return LOW_MEMORY;
+    }
+    return isLowRamDevice(context) ? LOW_MEMORY : STANDARD;
+  }
+
+  private static boolean isLowRamDevice(Context context) {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+      return false;
+    }
+    ActivityManager activityManager =
+        (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+    return activityManager != null && activityManager.isLowRamDevice();
+  }
+}
@@ -0,0 +1,298 @@
+package com.xiamijun.image_picker_controller;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs post-pick processing (resizing, cover extraction, transcoding) off the main thread.
+ *
+ * <p>{@link ImagePickerDelegate#onActivityResult} used to do this work inline, blocking the UI
+ * thread for as long as the slowest file took. Results are handed back with {@link
+ * #runOnMainThread} because the delegate's pending result is only touched from the main thread.
+ *
+ * <p>Work nobody is waiting for goes through {@link #executeDeferrable}, and is held back while
+ * any reason (heat, battery saver, ...) asks for non-urgent work to be deferred, for at most
+ * {@link #MAX_DEFER_MILLIS} since battery saver can stay on for hours.
+ *
+ * <p>Queued jobs run highest priority first, then in submission order. A job submitted with a key
+ * (the source path of an item) takes the priority last set for that key with {@link
+ * #setPriorities}, which also reorders jobs already queued, so items the user can see are
+ * processed before the rest. Running jobs are never interrupted.
+ */
+class ProcessingScheduler {
+  private static final long KEEP_ALIVE_SECONDS = 30;
+  // Limit key of profiles that process one item at a time.
+  private static final String PROFILE_LIMIT_REASON = "profile";
+  private static final long MAX_DEFER_MILLIS = 10 * 60 * 1000;
+
+  private static final Comparator<Runnable> JOB_ORDER =
+      new Comparator<Runnable>() {
+        @Override
+        public int compare(Runnable a, Runnable b) {
+          Job first = (Job) a;
+          Job second = (Job) b;
+          if (first.priority != second.priority) {
+            return Integer.compare(second.priority, first.priority);
+          }
+          return Long.compare(first.sequence, second.sequence);
+        }
+      };
+
+  private final ThreadPoolExecutor executor;
+  private final PriorityBlockingQueue<Runnable> queue =
+      new PriorityBlockingQueue<>(16, JOB_ORDER);
+  private final AtomicLong sequence = new AtomicLong();
+  // Priorities by job key, set from Dart; a key is dropped once its job starts.
+  private final Map<String, Integer> priorities = new HashMap<>();
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private final int defaultThreads;
+  // Concurrency caps by reason (memory pressure, ...); the lowest one applies.
+  private final Map<String, Integer> limits = new HashMap<>();
+  private final Set<String> deferReasons = new HashSet<>();
+  private final List<Deferred> deferred = new ArrayList<>();
+  // Picks and batches in progress under a sequential profile.
+  private int sequentialUsers;
+
+  ProcessingScheduler() {
+    int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    defaultThreads = threads;
+    executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            queue);
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  void execute(Runnable task) {
+    execute(task, null);
+  }
+
+  /** Queues task at the priority set for key, or 0 when key is null or has none. */
+  void execute(Runnable task, @Nullable String key) {
+    executor.execute(job(task, key));
+  }
+
+  void executeDeferrable(Runnable task) {
+    executeDeferrable(task, null);
+  }
+
+  /**
+   * Runs task now, or once no reason defers non-urgent work any more. onDropped, if any, runs
+   * instead when the scheduler is shut down before task could be queued.
+   */
+  synchronized void executeDeferrable(Runnable task, @Nullable Runnable onDropped) {
+    if (executor.isShutdown()) {
+      // A running job may still hand off work after the plugin detached.
+      if (onDropped != null) {
+        onDropped.run();
+      }
+      return;
+    }
+    Job job = job(task, null);
+    if (deferReasons.isEmpty()) {
+      executor.execute(job);
+    } else {
+      Deferred entry = new Deferred(job, onDropped);
+      deferred.add(entry);
+      mainHandler.postDelayed(entry, MAX_DEFER_MILLIS);
+    }
+  }
+
+  /**
+   * Sets the priority of each key, higher first; a null value resets it to 0. Queued jobs are
+   * reordered at once.
+   */
+  synchronized void setPriorities(Map<String, Integer> updates) {
+    for (Map.Entry<String, Integer> entry : updates.entrySet()) {
+      if (entry.getValue() == null) {
+        priorities.remove(entry.getKey());
+      } else {
+        priorities.put(entry.getKey(), entry.getValue());
+      }
+    }
+    // The heap only orders on insertion, so queued jobs are taken out and put back.
+    List<Runnable> pending = new ArrayList<>();
+    queue.drainTo(pending);
+    for (Runnable runnable : pending) {
+      Job job = (Job) runnable;
+      if (job.key != null) {
+        job.priority = priorityOf(job.key);
+      }
+    }
+    queue.addAll(pending);
+  }
+
+  private synchronized Job job(Runnable task, @Nullable String key) {
+    return new Job(task, key, priorityOf(key), sequence.getAndIncrement());
+  }
+
+  private int priorityOf(@Nullable String key) {
+    Integer priority = key == null ? null : priorities.get(key);
+    return priority == null ? 0 : priority;
+  }
+
+  private synchronized void started(Job job) {
+    if (job.key != null) {
+      priorities.remove(job.key);
+    }
+  }
+
+  void runOnMainThread(Runnable task) {
+    mainHandler.post(task);
+  }
+
+  /** Caps the number of jobs running at once until {@link #clearConcurrencyLimit} for reason. */
+  synchronized void limitConcurrency(String reason, int limit) {
+    limits.put(reason, limit);
+    applyLimits();
+  }
+
+  /**
+   * Applies the concurrency of profile for one pick or batch. Jobs run one at a time while any
+   * user of a sequential profile is active; every call must be paired with {@link
+   * #releaseProfile} once that user's jobs are done.
+   */
+  synchronized void acquireProfile(ProcessingProfile profile) {
+    if (profile.sequential && sequentialUsers++ == 0) {
+      limitConcurrency(PROFILE_LIMIT_REASON, 1);
+    }
+  }
+
+  synchronized void releaseProfile(ProcessingProfile profile) {
+    if (profile.sequential && --sequentialUsers == 0) {
+      clearConcurrencyLimit(PROFILE_LIMIT_REASON);
+    }
+  }
+
+  synchronized void clearConcurrencyLimit(String reason) {
+    if (limits.remove(reason) != null) {
+      applyLimits();
+    }
+  }
+
+  /** Holds back {@link #executeDeferrable} work until {@link #resumeNonUrgentWork} for reason. */
+  synchronized void deferNonUrgentWork(String reason) {
+    deferReasons.add(reason);
+  }
+
+  synchronized void resumeNonUrgentWork(String reason) {
+    if (deferReasons.remove(reason) && deferReasons.isEmpty() && !executor.isShutdown()) {
+      for (Deferred entry : deferred) {
+        mainHandler.removeCallbacks(entry);
+        executor.execute(entry.job);
+      }
+      deferred.clear();
+    }
+  }
+
+  synchronized boolean isDeferringNonUrgentWork() {
+    return !deferReasons.isEmpty();
+  }
+
+  synchronized int concurrency() {
+    return executor.getMaximumPoolSize();
+  }
+
+  private void applyLimits() {
+    int threads = defaultThreads;
+    for (int limit : limits.values()) {
+      threads = Math.min(threads, limit);
+    }
+    threads = Math.max(1, threads);
+    // Core size may never exceed the maximum, so the order depends on the direction.
+    if (threads < executor.getMaximumPoolSize()) {
+      executor.setCorePoolSize(threads);
+      executor.setMaximumPoolSize(threads);
+    } else {
+      executor.setMaximumPoolSize(threads);
+      executor.setCorePoolSize(threads);
+    }
+  }
+
+  void putMetrics(Map<String, Object> metrics) {
+    metrics.put("concurrency", concurrency());
+    metrics.put("activeJobs", executor.getActiveCount());
+    metrics.put("queuedJobs", executor.getQueue().size());
+    synchronized (this) {
+      metrics.put("deferredJobs", deferred.size());
+      metrics.put("deferReasons", new ArrayList<>(deferReasons));
+    }
+  }
+
+  private class Job implements Runnable {
+    private final Runnable task;
+    @Nullable final String key;
+    // Only changed by setPriorities while the job is out of the queue.
+    int priority;
+    final long sequence;
+
+    Job(Runnable task, @Nullable String key, int priority, long sequence) {
+      this.task = task;
+      this.key = key;
+      this.priority = priority;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public void run() {
+      started(this);
+      task.run();
+    }
+  }
+
+  /**
+   * Runs a deferred job that waited {@link #MAX_DEFER_MILLIS}, whatever still defers non-urgent
+   * work.
+   */
+  private class Deferred implements Runnable {
+    final Job job;
+    @Nullable final Runnable onDropped;
+
+    Deferred(Job job, @Nullable Runnable onDropped) {
+      this.job = job;
+      this.onDropped = onDropped;
+    }
+
+    @Override
+    public void run() {
+      synchronized (ProcessingScheduler.this) {
+        if (deferred.remove(this) && !executor.isShutdown()) {
+          executor.execute(job);
+        }
+      }
+    }
+  }
+
+  void shutdown() {
+    List<Deferred> dropped;
+    synchronized (this) {
+      // Deferred work is optional by definition, but whoever waits for it is told.
+      dropped = new ArrayList<>(deferred);
+      deferred.clear();
+      executor.shutdown();
+    }
+    for (Deferred entry : dropped) {
+      mainHandler.removeCallbacks(entry);
+      if (entry.onDropped != null) {
+        entry.onDropped.run();
+      }
+    }
+  }
+}
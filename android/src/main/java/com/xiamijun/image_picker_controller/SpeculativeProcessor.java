@@ -0,0 +1,236 @@
+package com.xiamijun.image_picker_controller;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Resizes images while the user is still selecting them, so results are mostly ready by the time
+ * the selection is confirmed.
+ *
+ * <p>PictureSelector only reports the selection once its activity finishes, so the selection comes
+ * from Dart through {@link #updateSelection}, typically from a gallery built on {@code
+ * getAssetPage}. Sources may be file paths or {@code content://} / {@code file://} uris. Each newly
+ * selected source is resized as deferrable work with the options of the latest update; a source
+ * that leaves the selection is dropped if still queued and its output deleted once written.
+ * Changing the options drops everything.
+ *
+ * <p>{@link #take} hands a finished or running result to the caller that needs it, and returns
+ * null when the caller should do the work itself.
+ */
+class SpeculativeProcessor {
+  private static final String TAG = "SpeculativeProcessor";
+
+  private static final int STATE_QUEUED = 0;
+  private static final int STATE_RUNNING = 1;
+  private static final int STATE_DONE = 2;
+  private static final int STATE_DROPPED = 3;
+
+  private final Context context;
+  private final ImageResizer imageResizer;
+  private final ProcessingScheduler processingScheduler;
+  private final FileUtils fileUtils;
+  // Guarded by this.
+  private final Map<String, Entry> entries = new HashMap<>();
+  @Nullable private ImageResizer.Options options;
+  private int hits;
+  private int discards;
+
+  SpeculativeProcessor(
+      Context context,
+      ImageResizer imageResizer,
+      ProcessingScheduler processingScheduler,
+      FileUtils fileUtils) {
+    this.context = context.getApplicationContext();
+    this.imageResizer = imageResizer;
+    this.processingScheduler = processingScheduler;
+    this.fileUtils = fileUtils;
+  }
+
+  /**
+   * Replaces the selection with the {@code sources} argument, processed with the picker
+   * configuration in the {@code configuration} argument. An empty list drops all work.
+   */
+  void updateSelection(MethodCall call, MethodChannel.Result result) {
+    List<String> sources = call.argument("sources");
+    if (sources == null) {
+      result.error("invalid_arguments", "sources is required", null);
+      return;
+    }
+    PickerConfiguration config = PickerConfiguration.fromMap((Map) call.argument("configuration"));
+    ImageResizer.Options selectionOptions =
+        ImageResizer.Options.fromConfiguration(
+            config, ProcessingProfile.forConfiguration(config, context));
+    updateSelection(sources, selectionOptions);
+    result.success(null);
+  }
+
+  synchronized void updateSelection(List<String> sources, ImageResizer.Options selectionOptions) {
+    if (options == null || !options.key().equals(selectionOptions.key())) {
+      clear();
+      options = selectionOptions;
+    }
+    Set<String> selected = new HashSet<>(sources);
+    for (String source : new ArrayList<>(entries.keySet())) {
+      if (!selected.contains(source)) {
+        drop(entries.remove(source));
+      }
+    }
+    for (String source : sources) {
+      if (!entries.containsKey(source)) {
+        Entry entry = new Entry(source, selectionOptions);
+        entries.put(source, entry);
+        schedule(entry);
+      }
+    }
+  }
+
+  /** Drops all work and deletes outputs nobody took. */
+  synchronized void clear() {
+    for (Entry entry : entries.values()) {
+      drop(entry);
+    }
+    entries.clear();
+  }
+
+  /**
+   * Returns the output for the first of sources that was speculatively processed with options
+   * equal to these, waiting for it if it is still running, or null when there is none. Ownership
+   * of the output passes to the caller.
+   */
+  @Nullable
+  String take(ImageResizer.Options takeOptions, String... sources) {
+    Entry entry = null;
+    synchronized (this) {
+      if (options == null || !options.key().equals(takeOptions.key())) {
+        return null;
+      }
+      for (String source : sources) {
+        if (source != null && entries.containsKey(source)) {
+          entry = entries.remove(source);
+          break;
+        }
+      }
+      if (entry == null) {
+        return null;
+      }
+      if (entry.state == STATE_QUEUED) {
+        // Not started; the caller does it now rather than wait behind other work.
+        entry.state = STATE_DROPPED;
+        return null;
+      }
+      hits++;
+    }
+    try {
+      entry.done.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+    if (entry.copiedPath != null && !entry.copiedPath.equals(entry.output)) {
+      // The copy of a content uri was only needed to decode it.
+      new File(entry.copiedPath).delete();
+    }
+    return entry.output;
+  }
+
+  synchronized void putMetrics(Map<String, Object> metrics) {
+    metrics.put("speculativeEntries", entries.size());
+    metrics.put("speculativeHits", hits);
+    metrics.put("speculativeDiscards", discards);
+  }
+
+  private void schedule(final Entry entry) {
+    processingScheduler.executeDeferrable(
+        new Runnable() {
+          @Override
+          public void run() {
+            synchronized (SpeculativeProcessor.this) {
+              if (entry.state != STATE_QUEUED) {
+                return;
+              }
+              entry.state = STATE_RUNNING;
+            }
+            process(entry);
+            synchronized (SpeculativeProcessor.this) {
+              if (entry.state == STATE_DROPPED) {
+                discard(entry);
+              } else {
+                entry.state = STATE_DONE;
+              }
+            }
+            entry.done.countDown();
+          }
+        });
+  }
+
+  private void process(Entry entry) {
+    String localPath = null;
+    try {
+      localPath = fileUtils.getLocalPath(context, entry.source);
+      if (FileUtils.isContentUri(entry.source)) {
+        entry.copiedPath = localPath;
+      }
+      if (localPath == null) {
+        return;
+      }
+      entry.localPath = localPath;
+      String resized = imageResizer.resizeImageIfNeeded(localPath, entry.options);
+      entry.output = resized != null ? resized : localPath;
+    } catch (RuntimeException e) {
+      Log.w(TAG, "Speculative resize failed for " + entry.source, e);
+      entry.output = localPath;
+    }
+  }
+
+  /** Cancels queued work, and deletes outputs of finished work; running work discards itself. */
+  private void drop(Entry entry) {
+    if (entry.state == STATE_DONE) {
+      discard(entry);
+    }
+    entry.state = STATE_DROPPED;
+  }
+
+  private void discard(Entry entry) {
+    discards++;
+    // Never the picked file itself: only a resized output or a copy of a content uri. Both are
+    // written under unique names, so they belong to this entry alone, even when another entry or a
+    // batch resizes the same source.
+    if (entry.output != null && !entry.output.equals(entry.localPath)) {
+      new File(entry.output).delete();
+    }
+    if (entry.copiedPath != null) {
+      new File(entry.copiedPath).delete();
+    }
+  }
+
+  private static class Entry {
+    final String source;
+    final ImageResizer.Options options;
+    final CountDownLatch done = new CountDownLatch(1);
+    // Guarded by the processor.
+    int state = STATE_QUEUED;
+    // Written by the running task before done is counted down.
+    @Nullable String output;
+    @Nullable String localPath;
+    @Nullable String copiedPath;
+
+    Entry(String source, ImageResizer.Options options) {
+      this.source = source;
+      this.options = options;
+    }
+  }
+}
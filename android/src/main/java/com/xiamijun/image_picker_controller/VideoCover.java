@@ -0,0 +1,119 @@
+package com.xiamijun.image_picker_controller;
+
+import android.graphics.Bitmap;
+import android.media.MediaMetadataRetriever;
+import android.os.Build;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Picks the cover frame of a video.
+ *
+ * <p>The default seek mode decodes only the sync frame nearest to the cover time, which on
+ * long-GOP videos is several times faster than {@link MediaMetadataRetriever#OPTION_CLOSEST}, at
+ * the cost of an approximate timestamp. With dark frame skipping, candidates are judged on a
+ * small frame first and the full frame is decoded once, for the chosen time.
+ */
+class VideoCover {
+  static final String SEEK_MODE_SYNC = "sync";
+  static final String SEEK_MODE_CLOSEST = "closest";
+
+  // Edge of the frame the darkness test runs on.
+  private static final int PROBE_SIZE = 32;
+  // Mean luma, out of 255, below which a frame counts as dark.
+  private static final int DARK_LUMA = 24;
+  // Later candidates tried past a dark frame, each a tenth of the duration further.
+  private static final int DARK_RETRIES = 4;
+
+  static class Options {
+    @Nullable Long timeMs;
+    // Fraction of the duration in [0, 1]; used when timeMs is null.
+    @Nullable Double timeFraction;
+    int seekOption = MediaMetadataRetriever.OPTION_CLOSEST_SYNC;
+    boolean skipDarkFrames;
+
+    static Options fromConfiguration(PickerConfiguration config) {
+      Options options = new Options();
+      options.timeMs = config.coverTimeMs == null ? null : config.coverTimeMs.longValue();
+      options.timeFraction = config.coverTimeFraction;
+      if (SEEK_MODE_CLOSEST.equals(config.coverSeekMode)) {
+        options.seekOption = MediaMetadataRetriever.OPTION_CLOSEST;
+      }
+      options.skipDarkFrames = config.skipDarkCoverFrames;
+      return options;
+    }
+  }
+
+  private VideoCover() {}
+
+  @Nullable
+  static Bitmap frame(MediaMetadataRetriever retriever, Options options) {
+    long durationMs = durationMs(retriever);
+    // -1 lets the retriever choose its representative frame, as getFrameAtTime() does.
+    long timeUs = -1;
+    if (options.timeMs != null) {
+      timeUs = options.timeMs * 1000;
+    } else if (options.timeFraction != null) {
+      double fraction = Math.max(0, Math.min(1, options.timeFraction));
+      timeUs = (long) (durationMs * 1000 * fraction);
+    }
+    if (options.skipDarkFrames && durationMs > 0) {
+      long startUs = Math.max(0, timeUs);
+      long stepUs = durationMs * 1000 / 10;
+      for (int i = 0; i <= DARK_RETRIES; i++) {
+        long candidateUs = Math.min(startUs + stepUs * i, durationMs * 1000);
+        if (!isDark(retriever, candidateUs, options.seekOption)) {
+          timeUs = candidateUs;
+          break;
+        }
+      }
+      // When every candidate is dark, the requested time is kept.
+    }
+    return retriever.getFrameAtTime(timeUs, options.seekOption);
+  }
+
+  private static boolean isDark(MediaMetadataRetriever retriever, long timeUs, int seekOption) {
+    Bitmap probe;
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+      probe = retriever.getScaledFrameAtTime(timeUs, seekOption, PROBE_SIZE, PROBE_SIZE);
+    } else {
+      Bitmap frame = retriever.getFrameAtTime(timeUs, seekOption);
+      if (frame == null) {
+        return true;
+      }
+      probe = Bitmap.createScaledBitmap(frame, PROBE_SIZE, PROBE_SIZE, true);
+      if (probe != frame) {
+        frame.recycle();
+      }
+    }
+    if (probe == null) {
+      return true;
+    }
+    int width = probe.getWidth();
+    int height = probe.getHeight();
+    int[] pixels = new int[width * height];
+    probe.getPixels(pixels, 0, width, 0, 0, width, height);
+    probe.recycle();
+    long luma = 0;
+    for (int pixel : pixels) {
+      // Rec. 601 weights in fixed point.
+      int r = (pixel >> 16) & 0xff;
+      int g = (pixel >> 8) & 0xff;
+      int b = pixel & 0xff;
+      luma += (77 * r + 150 * g + 29 * b) >> 8;
+    }
+    return luma < (long) DARK_LUMA * pixels.length;
+  }
+
+  private static long durationMs(MediaMetadataRetriever retriever) {
+    String value = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+    if (value == null) {
+      return 0;
+    }
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package com.xiamijun.image_picker_controller;
+
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMetadataRetriever;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Reads duration, size, rotation, bitrate and codec of a video into an asset map.
+ *
+ * <p>Meant to be called with the retriever already opened for the cover, so that a picked video is
+ * opened once. The retriever has no codec key; the codec comes from a {@link MediaExtractor} on the
+ * same file descriptor, which only parses the container header.
+ */
+class VideoMetadata {
+  private static final String TAG = "VideoMetadata";
+
+  private VideoMetadata() {}
+
+  static void read(MediaMetadataRetriever retriever, FileDescriptor fd, Map<String, Object> asset) {
+    putLong(asset, "duration", retriever, MediaMetadataRetriever.METADATA_KEY_DURATION);
+    putInt(asset, "width", retriever, MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH);
+    putInt(asset, "height", retriever, MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT);
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+      putInt(asset, "rotation", retriever, MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION);
+    }
+    putInt(asset, "bitrate", retriever, MediaMetadataRetriever.METADATA_KEY_BITRATE);
+    String mimeType = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_MIMETYPE);
+    if (mimeType != null) {
+      asset.put("mimeType", mimeType);
+    }
+    String codec = readCodec(fd);
+    if (codec != null) {
+      asset.put("codec", codec);
+    }
+  }
+
+  @Nullable
+  private static String readCodec(FileDescriptor fd) {
+    MediaExtractor extractor = new MediaExtractor();
+    try {
+      extractor.setDataSource(fd);
+      int track = VideoTranscoder.findTrack(extractor, "video/");
+      return track < 0
+          ? null
+          : extractor.getTrackFormat(track).getString(MediaFormat.KEY_MIME);
+    } catch (IOException | RuntimeException e) {
+      Log.w(TAG, "Unable to read the video codec", e);
+      return null;
+    } finally {
+      extractor.release();
+    }
+  }
+
+  private static void putInt(
+      Map<String, Object> asset, String key, MediaMetadataRetriever retriever, int metadataKey) {
+    String value = retriever.extractMetadata(metadataKey);
+    if (value == null) {
+      return;
+    }
+    try {
+      asset.put(key, Integer.parseInt(value));
+    } catch (NumberFormatException e) {
+      Log.w(TAG, "Unexpected " + key + ": " + value);
+    }
+  }
+
+  private static void putLong(
+      Map<String, Object> asset, String key, MediaMetadataRetriever retriever, int metadataKey) {
+    String value = retriever.extractMetadata(metadataKey);
+    if (value == null) {
+      return;
+    }
+    try {
+      asset.put(key, Long.parseLong(value));
+    } catch (NumberFormatException e) {
+      Log.w(TAG, "Unexpected " + key + ": " + value);
+    }
+  }
+}
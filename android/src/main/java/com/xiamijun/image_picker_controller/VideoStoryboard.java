@@ -0,0 +1,349 @@
+package com.xiamijun.image_picker_controller;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.media.MediaMetadataRetriever;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Extracts evenly spaced frames of a video, either as one sprite sheet or as one JPEG per frame.
+ *
+ * <p>Frames are taken at the sync frame nearest to each time, in ascending order, so every frame
+ * is a single key frame decode and the extractor only moves forward through the file. On API 27+
+ * the retriever scales while decoding; below that each frame is scaled right after. {@code
+ * getFramesAtIndex} is not used: it returns a contiguous run of frames, so evenly spaced frames
+ * would still need one call, and one decode from the previous key frame, per frame.
+ *
+ * <p>Results are cached on disk per file, size, modification time and options. A storyboard is
+ * written to a temporary directory and renamed into place once complete, so a crashed, failed or
+ * concurrent extraction is never read back as a cached one.
+ *
+ * <p>At most {@link #MAX_FRAME_COUNT} frames are taken, and sprite sheets are scaled down to at
+ * most {@link #MAX_SPRITE_PIXELS} pixels, since the sheet is a single bitmap.
+ */
+class VideoStoryboard {
+  private static final String TAG = "VideoStoryboard";
+  private static final String SPRITE_NAME = "sprite.jpg";
+  // Bumped whenever the cache layout changes, so older entries are never read back.
+  private static final String CACHE_VERSION = "v2";
+  static final int MAX_FRAME_COUNT = 100;
+  // 16 MB as RGB_565.
+  static final int MAX_SPRITE_PIXELS = 8 * 1024 * 1024;
+
+  static class Options {
+    int frameCount;
+    // Longest edge of a frame, in pixels.
+    int frameSize = 160;
+    // One sprite sheet instead of a file per frame.
+    boolean sprite = true;
+    int quality = 80;
+
+    boolean isEnabled() {
+      return frameCount > 0;
+    }
+
+    static Options fromConfiguration(PickerConfiguration config) {
+      Options options = new Options();
+      if (config.storyboardFrameCount != null) {
+        options.frameCount = Math.min(config.storyboardFrameCount, MAX_FRAME_COUNT);
+      }
+      if (config.storyboardFrameSize != null) {
+        options.frameSize = config.storyboardFrameSize;
+      }
+      options.sprite = config.storyboardSprite;
+      return options;
+    }
+
+    static Options fromMap(Map<String, Object> map) {
+      Options options = new Options();
+      if (map.get("frameCount") != null) {
+        options.frameCount = Math.min((Integer) map.get("frameCount"), MAX_FRAME_COUNT);
+      }
+      if (map.get("frameSize") != null) {
+        options.frameSize = (Integer) map.get("frameSize");
+      }
+      if (map.get("sprite") != null) {
+        options.sprite = (Boolean) map.get("sprite");
+      }
+      if (map.get("quality") != null) {
+        options.quality = (Integer) map.get("quality");
+      }
+      return options;
+    }
+
+    private String cacheKey() {
+      return CACHE_VERSION
+          + "_"
+          + frameCount
+          + "_"
+          + frameSize
+          + "_"
+          + (sprite ? "s" : "f")
+          + "_"
+          + quality;
+    }
+  }
+
+  private final File cacheDirectory;
+
+  VideoStoryboard(File cacheDirectory) {
+    this.cacheDirectory = new File(cacheDirectory, "video_storyboards");
+  }
+
+  /**
+   * Returns the storyboard of {@code path}, read through a retriever whose data source is already
+   * set to it, or null when no frame could be decoded.
+   */
+  @Nullable
+  Map<String, Object> extract(String path, MediaMetadataRetriever retriever, Options options)
+      throws IOException {
+    String durationValue =
+        retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+    long durationMs = 0;
+    if (durationValue != null) {
+      try {
+        durationMs = Long.parseLong(durationValue);
+      } catch (NumberFormatException e) {
+        // Frames are then all taken at the start.
+      }
+    }
+    long[] timesMs = new long[options.frameCount];
+    for (int i = 0; i < timesMs.length; i++) {
+      // Centre of each of frameCount equal segments, so neither end is a black edge frame.
+      timesMs[i] = durationMs * (2 * i + 1) / (2L * options.frameCount);
+    }
+
+    File source = new File(path);
+    File directory =
+        new File(
+            cacheDirectory,
+            Integer.toHexString(path.hashCode())
+                + "_"
+                + source.length()
+                + "_"
+                + source.lastModified()
+                + "_"
+                + options.cacheKey());
+    Map<String, Object> cached = readCache(directory, options, timesMs);
+    if (cached != null) {
+      return cached;
+    }
+    File temp = new File(cacheDirectory, directory.getName() + ".tmp_" + UUID.randomUUID());
+    if (!temp.mkdirs()) {
+      throw new IOException("Unable to create " + temp);
+    }
+
+    Bitmap sheet = null;
+    Canvas canvas = null;
+    int columns = (int) Math.ceil(Math.sqrt(options.frameCount));
+    int rows = (options.frameCount + columns - 1) / columns;
+    int frameWidth = 0;
+    int frameHeight = 0;
+    Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    // One entry per requested time; null where the frame could not be decoded.
+    List<String> frameNames = new ArrayList<>();
+    boolean complete = false;
+    try {
+      for (int i = 0; i < timesMs.length; i++) {
+        Bitmap frame = frameAt(retriever, timesMs[i] * 1000, options.frameSize);
+        if (frame == null) {
+          frameNames.add(null);
+          continue;
+        }
+        try {
+          if (options.sprite) {
+            if (sheet == null) {
+              double pixels = (double) frame.getWidth() * frame.getHeight() * columns * rows;
+              double scale = Math.min(1, Math.sqrt(MAX_SPRITE_PIXELS / pixels));
+              frameWidth = Math.max(1, (int) (frame.getWidth() * scale));
+              frameHeight = Math.max(1, (int) (frame.getHeight() * scale));
+              sheet =
+                  Bitmap.createBitmap(
+                      frameWidth * columns, frameHeight * rows, Bitmap.Config.RGB_565);
+              canvas = new Canvas(sheet);
+            }
+            int left = (i % columns) * frameWidth;
+            int top = (i / columns) * frameHeight;
+            canvas.drawBitmap(
+                frame, null, new Rect(left, top, left + frameWidth, top + frameHeight), paint);
+          } else {
+            String name = "frame_" + i + ".jpg";
+            write(frame, new File(temp, name), options.quality);
+            frameNames.add(name);
+            frameWidth = frame.getWidth();
+            frameHeight = frame.getHeight();
+          }
+        } finally {
+          frame.recycle();
+        }
+      }
+      if (options.sprite) {
+        if (sheet == null) {
+          return null;
+        }
+        write(sheet, new File(temp, SPRITE_NAME), options.quality);
+      } else if (frameWidth == 0) {
+        return null;
+      }
+      complete = publish(temp, directory);
+    } finally {
+      if (sheet != null) {
+        sheet.recycle();
+      }
+      if (!complete) {
+        deleteRecursively(temp);
+      }
+    }
+    if (!directory.isDirectory()) {
+      throw new IOException("Unable to move storyboard to " + directory);
+    }
+    List<String> framePaths = null;
+    if (!options.sprite) {
+      framePaths = new ArrayList<>();
+      for (String name : frameNames) {
+        framePaths.add(name == null ? null : new File(directory, name).getPath());
+      }
+    }
+    return result(directory, options, timesMs, framePaths, frameWidth, frameHeight, columns, rows);
+  }
+
+  /**
+   * Renames a finished storyboard into place. Returns false, leaving the temporary directory to be
+   * deleted, when it could not be moved, including when a concurrent extraction got there first.
+   */
+  private static boolean publish(File temp, File directory) {
+    return !directory.exists() && temp.renameTo(directory);
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    if (file.exists() && !file.delete()) {
+      Log.w(TAG, "Unable to delete " + file);
+    }
+  }
+
+  @Nullable
+  private static Bitmap frameAt(MediaMetadataRetriever retriever, long timeUs, int frameSize) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+      return retriever.getScaledFrameAtTime(
+          timeUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC, frameSize, frameSize);
+    }
+    Bitmap frame = retriever.getFrameAtTime(timeUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+    if (frame == null) {
+      return null;
+    }
+    float scale = Math.min(1f, (float) frameSize / Math.max(frame.getWidth(), frame.getHeight()));
+    if (scale == 1f) {
+      return frame;
+    }
+    Bitmap scaled =
+        Bitmap.createScaledBitmap(
+            frame,
+            Math.max(1, Math.round(frame.getWidth() * scale)),
+            Math.max(1, Math.round(frame.getHeight() * scale)),
+            true);
+    frame.recycle();
+    return scaled;
+  }
+
+  @Nullable
+  private static Map<String, Object> readCache(File directory, Options options, long[] timesMs) {
+    if (!directory.isDirectory()) {
+      return null;
+    }
+    int columns = (int) Math.ceil(Math.sqrt(options.frameCount));
+    int rows = (options.frameCount + columns - 1) / columns;
+    BitmapFactory.Options bounds = new BitmapFactory.Options();
+    bounds.inJustDecodeBounds = true;
+    if (options.sprite) {
+      File sprite = new File(directory, SPRITE_NAME);
+      if (!sprite.exists()) {
+        return null;
+      }
+      BitmapFactory.decodeFile(sprite.getPath(), bounds);
+      if (bounds.outWidth <= 0) {
+        return null;
+      }
+      return result(
+          directory,
+          options,
+          timesMs,
+          null,
+          bounds.outWidth / columns,
+          bounds.outHeight / rows,
+          columns,
+          rows);
+    }
+    // Only complete storyboards are renamed into place, so a missing frame was never decoded.
+    List<String> framePaths = new ArrayList<>();
+    String first = null;
+    for (int i = 0; i < options.frameCount; i++) {
+      File frame = new File(directory, "frame_" + i + ".jpg");
+      String framePath = frame.exists() ? frame.getPath() : null;
+      framePaths.add(framePath);
+      if (first == null) {
+        first = framePath;
+      }
+    }
+    if (first == null) {
+      return null;
+    }
+    BitmapFactory.decodeFile(first, bounds);
+    return result(
+        directory, options, timesMs, framePaths, bounds.outWidth, bounds.outHeight, columns, rows);
+  }
+
+  private static Map<String, Object> result(
+      File directory,
+      Options options,
+      long[] timesMs,
+      @Nullable List<String> framePaths,
+      int frameWidth,
+      int frameHeight,
+      int columns,
+      int rows) {
+    Map<String, Object> result = new HashMap<>();
+    result.put("timesMs", timesMs);
+    result.put("frameWidth", frameWidth);
+    result.put("frameHeight", frameHeight);
+    if (options.sprite) {
+      result.put("spritePath", new File(directory, SPRITE_NAME).getPath());
+      result.put("columns", columns);
+      result.put("rows", rows);
+    } else {
+      result.put("framePaths", framePaths);
+    }
+    return result;
+  }
+
+  private static void write(Bitmap bitmap, File file, int quality) throws IOException {
+    OutputStream out = new FileOutputStream(file);
+    try {
+      bitmap.compress(Bitmap.CompressFormat.JPEG, quality, out);
+    } finally {
+      out.close();
+    }
+  }
+}
+
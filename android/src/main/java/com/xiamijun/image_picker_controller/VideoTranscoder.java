@@ -0,0 +1,636 @@
+package com.xiamijun.image_picker_controller;
+
+import android.graphics.SurfaceTexture;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.os.Build;
+import android.util.Log;
+import android.view.Surface;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.UUID;
+
+/**
+ * Re-encodes a video to a target resolution, bitrate and frame rate with the hardware codecs.
+ *
+ * <p>Frames go decoder → {@link SurfaceTexture} → GL → encoder input surface, so pixels never
+ * leave the GPU. The audio track is copied as is, through its own extractor, and interleaved with
+ * the encoded video by presentation time so the file plays from a progressive read. When the
+ * source already meets every target the original path is returned untouched, as it is below API
+ * 21.
+ */
+class VideoTranscoder {
+  private static final String TAG = "VideoTranscoder";
+
+  private static final String OUTPUT_MIME_TYPE = MediaFormat.MIMETYPE_VIDEO_AVC;
+  private static final int DEFAULT_FRAME_RATE = 30;
+  private static final int I_FRAME_INTERVAL_SECONDS = 1;
+  private static final long TIMEOUT_US = 10000;
+  // A source within this margin of the target bitrate is not worth a generation loss.
+  private static final float BITRATE_TOLERANCE = 1.1f;
+  private static final float PROGRESS_STEP = 0.02f;
+
+  interface ProgressListener {
+    void onProgress(double progress);
+  }
+
+  /** Transcode targets; a null field leaves that property as it is in the source. */
+  static class Options {
+    @Nullable Integer maxWidth;
+    @Nullable Integer maxHeight;
+    @Nullable Integer bitrate;
+    @Nullable Integer frameRate;
+
+    static Options fromConfiguration(PickerConfiguration config) {
+      Options options = new Options();
+      options.maxWidth = config.transcodeMaxWidth;
+      options.maxHeight = config.transcodeMaxHeight;
+      options.bitrate = config.transcodeBitrate;
+      options.frameRate = config.transcodeFrameRate;
+      return options;
+    }
+
+    boolean isEnabled() {
+      return maxWidth != null || maxHeight != null || bitrate != null || frameRate != null;
+    }
+  }
+
+  private final File outputDirectory;
+
+  VideoTranscoder(File outputDirectory) {
+    this.outputDirectory = outputDirectory;
+  }
+
+  /** Returns the path of the transcoded file, or {@code path} itself when no work is needed. */
+  String transcodeIfNeeded(String path, Options options, @Nullable ProgressListener listener)
+      throws IOException {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+      return path;
+    }
+    MediaExtractor extractor = new MediaExtractor();
+    try {
+      extractor.setDataSource(path);
+      int videoTrack = findTrack(extractor, "video/");
+      if (videoTrack < 0) {
+        return path;
+      }
+      MediaFormat inputFormat = extractor.getTrackFormat(videoTrack);
+      int width = inputFormat.getInteger(MediaFormat.KEY_WIDTH);
+      int height = inputFormat.getInteger(MediaFormat.KEY_HEIGHT);
+      int rotation = getInteger(inputFormat, "rotation-degrees", 0);
+      long durationUs = getLong(inputFormat, MediaFormat.KEY_DURATION, 0);
+      int sourceFrameRate = getInteger(inputFormat, MediaFormat.KEY_FRAME_RATE, 0);
+      int sourceBitrate = getInteger(inputFormat, MediaFormat.KEY_BIT_RATE, 0);
+      if (sourceBitrate <= 0 && durationUs > 0) {
+        sourceBitrate = (int) (new File(path).length() * 8 * 1000000L / durationUs);
+      }
+
+      // Frames are encoded as stored and the rotation is carried over as a hint, so the display
+      // bounds are checked against the stored size with width and height swapped when rotated.
+      boolean swapped = rotation == 90 || rotation == 270;
+      Integer boundWidth = swapped ? options.maxHeight : options.maxWidth;
+      Integer boundHeight = swapped ? options.maxWidth : options.maxHeight;
+      double scale = 1.0;
+      if (boundWidth != null && width > boundWidth) {
+        scale = Math.min(scale, (double) boundWidth / width);
+      }
+      if (boundHeight != null && height > boundHeight) {
+        scale = Math.min(scale, (double) boundHeight / height);
+      }
+      boolean resize = scale < 1.0;
+      boolean lowerBitrate =
+          options.bitrate != null && sourceBitrate > options.bitrate * BITRATE_TOLERANCE;
+      boolean lowerFrameRate =
+          options.frameRate != null && sourceFrameRate > options.frameRate;
+      if (!resize && !lowerBitrate && !lowerFrameRate) {
+        return path;
+      }
+
+      int outputWidth = alignTo16(width * scale);
+      int outputHeight = alignTo16(height * scale);
+      int frameRate =
+          options.frameRate != null
+              ? options.frameRate
+              : (sourceFrameRate > 0 ? sourceFrameRate : DEFAULT_FRAME_RATE);
+      int bitrate =
+          options.bitrate != null
+              ? options.bitrate
+              : (int) Math.max(sourceBitrate * scale * scale, 500000);
+
+      File output = new File(outputDirectory, "transcoded_" + UUID.randomUUID() + ".mp4");
+      if (!output.getParentFile().exists()) {
+        output.getParentFile().mkdirs();
+      }
+      boolean success = false;
+      try {
+        transcode(
+            path,
+            extractor,
+            videoTrack,
+            findTrack(extractor, "audio/"),
+            output,
+            outputWidth,
+            outputHeight,
+            bitrate,
+            frameRate,
+            rotation,
+            durationUs,
+            lowerFrameRate ? frameRate : 0,
+            listener);
+        success = true;
+        return output.getPath();
+      } finally {
+        if (!success && output.exists() && !output.delete()) {
+          Log.w(TAG, "Unable to delete partial output " + output);
+        }
+      }
+    } finally {
+      extractor.release();
+    }
+  }
+
+  private void transcode(
+      String path,
+      MediaExtractor extractor,
+      int videoTrack,
+      int audioTrack,
+      File output,
+      int width,
+      int height,
+      int bitrate,
+      int frameRate,
+      int rotation,
+      long durationUs,
+      int dropToFrameRate,
+      @Nullable ProgressListener listener)
+      throws IOException {
+    MediaFormat inputFormat = extractor.getTrackFormat(videoTrack);
+    MediaFormat outputFormat = MediaFormat.createVideoFormat(OUTPUT_MIME_TYPE, width, height);
+    outputFormat.setInteger(
+        MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+    outputFormat.setInteger(MediaFormat.KEY_BIT_RATE, bitrate);
+    outputFormat.setInteger(MediaFormat.KEY_FRAME_RATE, frameRate);
+    outputFormat.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, I_FRAME_INTERVAL_SECONDS);
+
+    MediaCodec encoder = null;
+    MediaCodec decoder = null;
+    EncoderInputSurface inputSurface = null;
+    DecoderOutputSurface outputSurface = null;
+    MediaMuxer muxer = null;
+    TrackCopier audioCopier = null;
+    boolean muxerStarted = false;
+    try {
+      encoder = MediaCodec.createEncoderByType(OUTPUT_MIME_TYPE);
+      encoder.configure(outputFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+      inputSurface = new EncoderInputSurface(encoder.createInputSurface());
+      inputSurface.makeCurrent();
+      encoder.start();
+
+      outputSurface = new DecoderOutputSurface();
+      decoder = MediaCodec.createDecoderByType(inputFormat.getString(MediaFormat.KEY_MIME));
+      decoder.configure(inputFormat, outputSurface.getSurface(), null, 0);
+      decoder.start();
+
+      muxer = new MediaMuxer(output.getPath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+      muxer.setOrientationHint(rotation);
+
+      extractor.selectTrack(videoTrack);
+      MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+      boolean inputDone = false;
+      boolean decoderDone = false;
+      boolean encoderDone = false;
+      int muxerVideoTrack = -1;
+      int muxerAudioTrack = -1;
+      long frameIntervalUs = dropToFrameRate > 0 ? 1000000L / dropToFrameRate : 0;
+      long nextFrameUs = 0;
+      double reported = 0;
+
+      while (!encoderDone) {
+        if (!inputDone) {
+          int index = decoder.dequeueInputBuffer(TIMEOUT_US);
+          if (index >= 0) {
+            ByteBuffer buffer = decoder.getInputBuffer(index);
+            int size = extractor.readSampleData(buffer, 0);
+            if (size < 0) {
+              decoder.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+              inputDone = true;
+            } else {
+              decoder.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+              extractor.advance();
+            }
+          }
+        }
+
+        if (!decoderDone) {
+          int index = decoder.dequeueOutputBuffer(info, TIMEOUT_US);
+          if (index >= 0) {
+            boolean endOfStream = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+            boolean keep = info.size > 0 && info.presentationTimeUs >= nextFrameUs;
+            decoder.releaseOutputBuffer(index, keep);
+            if (keep) {
+              nextFrameUs = info.presentationTimeUs + frameIntervalUs;
+              outputSurface.awaitNewImage();
+              outputSurface.drawImage();
+              inputSurface.setPresentationTime(info.presentationTimeUs * 1000);
+              inputSurface.swapBuffers();
+              if (listener != null && durationUs > 0) {
+                double progress = Math.min(1.0, (double) info.presentationTimeUs / durationUs);
+                if (progress - reported >= PROGRESS_STEP) {
+                  reported = progress;
+                  listener.onProgress(progress);
+                }
+              }
+            }
+            if (endOfStream) {
+              encoder.signalEndOfInputStream();
+              decoderDone = true;
+            }
+          }
+        }
+
+        int index = encoder.dequeueOutputBuffer(info, TIMEOUT_US);
+        if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+          muxerVideoTrack = muxer.addTrack(encoder.getOutputFormat());
+          if (audioTrack >= 0) {
+            muxerAudioTrack = muxer.addTrack(extractor.getTrackFormat(audioTrack));
+            audioCopier = new TrackCopier(path, audioTrack, muxer, muxerAudioTrack);
+          }
+          muxer.start();
+          muxerStarted = true;
+        } else if (index >= 0) {
+          ByteBuffer encoded = encoder.getOutputBuffer(index);
+          if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+            // Already part of the output format handed to the muxer.
+            info.size = 0;
+          }
+          if (info.size > 0 && muxerStarted) {
+            if (audioCopier != null) {
+              // Audio up to this frame goes first, so the two tracks are interleaved.
+              audioCopier.copyUntil(info.presentationTimeUs);
+            }
+            encoded.position(info.offset);
+            encoded.limit(info.offset + info.size);
+            muxer.writeSampleData(muxerVideoTrack, encoded, info);
+          }
+          encoder.releaseOutputBuffer(index, false);
+          if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+            encoderDone = true;
+          }
+        }
+      }
+
+      if (audioCopier != null) {
+        // Audio that outlasts the video.
+        audioCopier.copyUntil(Long.MAX_VALUE);
+      }
+      if (listener != null) {
+        listener.onProgress(1.0);
+      }
+    } finally {
+      if (decoder != null) {
+        decoder.release();
+      }
+      if (encoder != null) {
+        encoder.release();
+      }
+      if (outputSurface != null) {
+        outputSurface.release();
+      }
+      if (inputSurface != null) {
+        inputSurface.release();
+      }
+      if (audioCopier != null) {
+        audioCopier.release();
+      }
+      if (muxer != null) {
+        try {
+          if (muxerStarted) {
+            muxer.stop();
+          }
+        } catch (IllegalStateException e) {
+          Log.w(TAG, "Unable to finish " + output, e);
+        }
+        muxer.release();
+      }
+    }
+  }
+
+  /**
+   * Copies the samples of one track to the muxer without decoding, in presentation order and up to
+   * a given time per call. Reads through an extractor of its own, so it can run alongside the one
+   * feeding the decoder.
+   */
+  private static class TrackCopier {
+    private final MediaExtractor extractor = new MediaExtractor();
+    private final MediaMuxer muxer;
+    private final int muxerTrack;
+    private final ByteBuffer buffer;
+    private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    private boolean done;
+
+    TrackCopier(String path, int track, MediaMuxer muxer, int muxerTrack) throws IOException {
+      this.muxer = muxer;
+      this.muxerTrack = muxerTrack;
+      extractor.setDataSource(path);
+      MediaFormat format = extractor.getTrackFormat(track);
+      buffer = ByteBuffer.allocate(getInteger(format, MediaFormat.KEY_MAX_INPUT_SIZE, 256 * 1024));
+      extractor.selectTrack(track);
+    }
+
+    /** Writes every remaining sample presented at or before {@code timeUs}. */
+    void copyUntil(long timeUs) {
+      while (!done) {
+        long sampleUs = extractor.getSampleTime();
+        if (sampleUs < 0) {
+          done = true;
+          return;
+        }
+        if (sampleUs > timeUs) {
+          return;
+        }
+        info.offset = 0;
+        info.size = extractor.readSampleData(buffer, 0);
+        if (info.size < 0) {
+          done = true;
+          return;
+        }
+        info.presentationTimeUs = sampleUs;
+        info.flags =
+            (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0
+                ? MediaCodec.BUFFER_FLAG_KEY_FRAME
+                : 0;
+        muxer.writeSampleData(muxerTrack, buffer, info);
+        extractor.advance();
+      }
+    }
+
+    void release() {
+      extractor.release();
+    }
+  }
+
+  static int findTrack(MediaExtractor extractor, String mimePrefix) {
+    for (int i = 0; i < extractor.getTrackCount(); i++) {
+      String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+      if (mime != null && mime.startsWith(mimePrefix)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  static int getInteger(MediaFormat format, String key, int fallback) {
+    return format.containsKey(key) ? format.getInteger(key) : fallback;
+  }
+
+  static long getLong(MediaFormat format, String key, long fallback) {
+    return format.containsKey(key) ? format.getLong(key) : fallback;
+  }
+
+  private static int alignTo16(double value) {
+    return Math.max(16, (int) Math.round(value / 16) * 16);
+  }
+
+  /** EGL window surface on top of the encoder's input surface. */
+  private static class EncoderInputSurface {
+    private static final int EGL_RECORDABLE_ANDROID = 0x3142;
+
+    private final Surface surface;
+    private EGLDisplay display = EGL14.EGL_NO_DISPLAY;
+    private EGLContext context = EGL14.EGL_NO_CONTEXT;
+    private EGLSurface eglSurface = EGL14.EGL_NO_SURFACE;
+
+    EncoderInputSurface(Surface surface) {
+      this.surface = surface;
+      display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+      int[] version = new int[2];
+      if (!EGL14.eglInitialize(display, version, 0, version, 1)) {
+        throw new IllegalStateException("Unable to initialize EGL");
+      }
+      int[] attributes = {
+        EGL14.EGL_RED_SIZE, 8,
+        EGL14.EGL_GREEN_SIZE, 8,
+        EGL14.EGL_BLUE_SIZE, 8,
+        EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+        EGL_RECORDABLE_ANDROID, 1,
+        EGL14.EGL_NONE
+      };
+      EGLConfig[] configs = new EGLConfig[1];
+      int[] count = new int[1];
+      EGL14.eglChooseConfig(display, attributes, 0, configs, 0, 1, count, 0);
+      if (count[0] == 0) {
+        throw new IllegalStateException("No recordable EGL config");
+      }
+      context =
+          EGL14.eglCreateContext(
+              display,
+              configs[0],
+              EGL14.EGL_NO_CONTEXT,
+              new int[] {EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE},
+              0);
+      eglSurface =
+          EGL14.eglCreateWindowSurface(
+              display, configs[0], surface, new int[] {EGL14.EGL_NONE}, 0);
+    }
+
+    void makeCurrent() {
+      if (!EGL14.eglMakeCurrent(display, eglSurface, eglSurface, context)) {
+        throw new IllegalStateException("eglMakeCurrent failed");
+      }
+    }
+
+    void setPresentationTime(long nanos) {
+      EGLExt.eglPresentationTimeANDROID(display, eglSurface, nanos);
+    }
+
+    void swapBuffers() {
+      EGL14.eglSwapBuffers(display, eglSurface);
+    }
+
+    void release() {
+      if (display != EGL14.EGL_NO_DISPLAY) {
+        EGL14.eglMakeCurrent(
+            display, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+        EGL14.eglDestroySurface(display, eglSurface);
+        EGL14.eglDestroyContext(display, context);
+        EGL14.eglReleaseThread();
+        EGL14.eglTerminate(display);
+      }
+      surface.release();
+      display = EGL14.EGL_NO_DISPLAY;
+    }
+  }
+
+  /** Receives decoded frames as an external texture and draws them full screen. */
+  private static class DecoderOutputSurface implements SurfaceTexture.OnFrameAvailableListener {
+    private static final long FRAME_TIMEOUT_MS = 2500;
+
+    private static final String VERTEX_SHADER =
+        "uniform mat4 uSTMatrix;\n"
+            + "attribute vec4 aPosition;\n"
+            + "attribute vec4 aTextureCoord;\n"
+            + "varying vec2 vTextureCoord;\n"
+            + "void main() {\n"
+            + "  gl_Position = aPosition;\n"
+            + "  vTextureCoord = (uSTMatrix * aTextureCoord).xy;\n"
+            + "}\n";
+
+    private static final String FRAGMENT_SHADER =
+        "#extension GL_OES_EGL_image_external : require\n"
+            + "precision mediump float;\n"
+            + "varying vec2 vTextureCoord;\n"
+            + "uniform samplerExternalOES sTexture;\n"
+            + "void main() {\n"
+            + "  gl_FragColor = texture2D(sTexture, vTextureCoord);\n"
+            + "}\n";
+
+    // x, y, u, v for a full-screen triangle strip.
+    private static final float[] VERTICES = {
+      -1f, -1f, 0f, 0f,
+      1f, -1f, 1f, 0f,
+      -1f, 1f, 0f, 1f,
+      1f, 1f, 1f, 1f,
+    };
+
+    private final Object frameLock = new Object();
+    private final float[] stMatrix = new float[16];
+    private final FloatBuffer vertices;
+    private final SurfaceTexture surfaceTexture;
+    private final Surface surface;
+    private final int program;
+    private final int textureId;
+    private boolean frameAvailable;
+
+    DecoderOutputSurface() {
+      vertices =
+          ByteBuffer.allocateDirect(VERTICES.length * 4)
+              .order(ByteOrder.nativeOrder())
+              .asFloatBuffer();
+      vertices.put(VERTICES).position(0);
+
+      int[] textures = new int[1];
+      GLES20.glGenTextures(1, textures, 0);
+      textureId = textures[0];
+      GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+      GLES20.glTexParameteri(
+          GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+      GLES20.glTexParameteri(
+          GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+      GLES20.glTexParameteri(
+          GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+      GLES20.glTexParameteri(
+          GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+      program = createProgram(VERTEX_SHADER, FRAGMENT_SHADER);
+
+      // Without a Looper on this thread the callback arrives on the main thread, which stays free
+      // while we wait for it.
+      surfaceTexture = new SurfaceTexture(textureId);
+      surfaceTexture.setOnFrameAvailableListener(this);
+      surface = new Surface(surfaceTexture);
+    }
+
+    Surface getSurface() {
+      return surface;
+    }
+
+    @Override
+    public void onFrameAvailable(SurfaceTexture surfaceTexture) {
+      synchronized (frameLock) {
+        frameAvailable = true;
+        frameLock.notifyAll();
+      }
+    }
+
+    void awaitNewImage() {
+      synchronized (frameLock) {
+        long deadline = System.currentTimeMillis() + FRAME_TIMEOUT_MS;
+        while (!frameAvailable) {
+          long remaining = deadline - System.currentTimeMillis();
+          if (remaining <= 0) {
+            throw new IllegalStateException("Timed out waiting for a decoded frame");
+          }
+          try {
+            frameLock.wait(remaining);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+          }
+        }
+        frameAvailable = false;
+      }
+      surfaceTexture.updateTexImage();
+    }
+
+    void drawImage() {
+      surfaceTexture.getTransformMatrix(stMatrix);
+      GLES20.glUseProgram(program);
+      GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+      GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+
+      int position = GLES20.glGetAttribLocation(program, "aPosition");
+      int textureCoord = GLES20.glGetAttribLocation(program, "aTextureCoord");
+      vertices.position(0);
+      GLES20.glVertexAttribPointer(position, 2, GLES20.GL_FLOAT, false, 16, vertices);
+      GLES20.glEnableVertexAttribArray(position);
+      vertices.position(2);
+      GLES20.glVertexAttribPointer(textureCoord, 2, GLES20.GL_FLOAT, false, 16, vertices);
+      GLES20.glEnableVertexAttribArray(textureCoord);
+      GLES20.glUniformMatrix4fv(
+          GLES20.glGetUniformLocation(program, "uSTMatrix"), 1, false, stMatrix, 0);
+      GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    }
+
+    void release() {
+      GLES20.glDeleteProgram(program);
+      GLES20.glDeleteTextures(1, new int[] {textureId}, 0);
+      surface.release();
+      surfaceTexture.release();
+    }
+
+    private static int createProgram(String vertexSource, String fragmentSource) {
+      int program = GLES20.glCreateProgram();
+      GLES20.glAttachShader(program, loadShader(GLES20.GL_VERTEX_SHADER, vertexSource));
+      GLES20.glAttachShader(program, loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource));
+      GLES20.glLinkProgram(program);
+      int[] status = new int[1];
+      GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+      if (status[0] != GLES20.GL_TRUE) {
+        String log = GLES20.glGetProgramInfoLog(program);
+        GLES20.glDeleteProgram(program);
+        throw new IllegalStateException("Unable to link program: " + log);
+      }
+      return program;
+    }
+
+    private static int loadShader(int type, String source) {
+      int shader = GLES20.glCreateShader(type);
+      GLES20.glShaderSource(shader, source);
+      GLES20.glCompileShader(shader);
+      int[] status = new int[1];
+      GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+      if (status[0] == 0) {
+        String log = GLES20.glGetShaderInfoLog(shader);
+        GLES20.glDeleteShader(shader);
+        throw new IllegalStateException("Unable to compile shader: " + log);
+      }
+      return shader;
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package com.xiamijun.image_picker_controller;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Cuts a video to a time range by copying compressed samples, without decoding or encoding.
+ *
+ * <p>The cut starts at the sync frame at or before the requested start, since a stream can only
+ * begin on a key frame, so the output may begin slightly earlier than asked. Timestamps are
+ * shifted to start at zero. Cost is the I/O of the kept range only. Only video and audio tracks
+ * are kept; timed metadata and other tracks cannot be muxed into MP4 and are dropped.
+ */
+class VideoTrimmer {
+  private static final String TAG = "VideoTrimmer";
+  private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+  /** Trim range in milliseconds; a null end keeps everything after the start. */
+  static class Options {
+    long startMs;
+    @Nullable Long endMs;
+    // The gallery did not filter out longer videos, so the source must not be returned instead.
+    boolean enforcesMaxDuration;
+
+    @Nullable
+    static Options fromConfiguration(PickerConfiguration config) {
+      boolean trimToMaxDuration = config.trimToMaxDuration && config.videoMaxDuration > 0;
+      if (config.trimStartMs == null && config.trimEndMs == null && !trimToMaxDuration) {
+        return null;
+      }
+      Options options = new Options();
+      options.startMs = config.trimStartMs == null ? 0 : config.trimStartMs;
+      options.endMs = config.trimEndMs == null ? null : config.trimEndMs.longValue();
+      options.enforcesMaxDuration = trimToMaxDuration;
+      if (trimToMaxDuration) {
+        long maxEndMs = options.startMs + config.videoMaxDuration * 1000L;
+        options.endMs = options.endMs == null ? maxEndMs : Math.min(options.endMs, maxEndMs);
+      }
+      return options;
+    }
+  }
+
+  private final File outputDirectory;
+
+  VideoTrimmer(File outputDirectory) {
+    this.outputDirectory = outputDirectory;
+  }
+
+  /** Returns the trimmed file, or {@code path} itself when the range covers the whole video. */
+  String trimIfNeeded(String path, Options options) throws IOException {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+      return path;
+    }
+    long startUs = Math.max(0, options.startMs) * 1000;
+    long endUs = options.endMs == null ? Long.MAX_VALUE : options.endMs * 1000;
+
+    MediaExtractor extractor = new MediaExtractor();
+    MediaMuxer muxer = null;
+    File output = null;
+    boolean success = false;
+    try {
+      extractor.setDataSource(path);
+      int trackCount = extractor.getTrackCount();
+      long durationUs = 0;
+      int rotation = 0;
+      int bufferSize = DEFAULT_BUFFER_SIZE;
+      for (int i = 0; i < trackCount; i++) {
+        MediaFormat format = extractor.getTrackFormat(i);
+        durationUs =
+            Math.max(durationUs, VideoTranscoder.getLong(format, MediaFormat.KEY_DURATION, 0));
+        bufferSize =
+            Math.max(
+                bufferSize,
+                VideoTranscoder.getInteger(format, MediaFormat.KEY_MAX_INPUT_SIZE, 0));
+        String mime = format.getString(MediaFormat.KEY_MIME);
+        if (mime != null && mime.startsWith("video/")) {
+          rotation = VideoTranscoder.getInteger(format, "rotation-degrees", 0);
+        }
+      }
+      if (startUs == 0 && endUs >= durationUs) {
+        return path;
+      }
+
+      output = new File(outputDirectory, "trimmed_" + UUID.randomUUID() + ".mp4");
+      if (!output.getParentFile().exists()) {
+        output.getParentFile().mkdirs();
+      }
+      muxer = new MediaMuxer(output.getPath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+      muxer.setOrientationHint(rotation);
+      int[] muxerTracks = new int[trackCount];
+      boolean anyTrack = false;
+      for (int i = 0; i < trackCount; i++) {
+        MediaFormat format = extractor.getTrackFormat(i);
+        String mime = format.getString(MediaFormat.KEY_MIME);
+        if (mime == null || !(mime.startsWith("video/") || mime.startsWith("audio/"))) {
+          muxerTracks[i] = -1;
+          continue;
+        }
+        extractor.selectTrack(i);
+        muxerTracks[i] = muxer.addTrack(format);
+        anyTrack = true;
+      }
+      if (!anyTrack) {
+        throw new IOException("No video or audio track in " + path);
+      }
+
+      // Positions every selected track; the video track lands on its previous sync frame.
+      extractor.seekTo(startUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+      long firstSampleUs = extractor.getSampleTime();
+      if (firstSampleUs < 0) {
+        return path;
+      }
+      muxer.start();
+
+      ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+      MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+      int videoTrack = VideoTranscoder.findTrack(extractor, "video/");
+      while (true) {
+        int track = extractor.getSampleTrackIndex();
+        if (track < 0) {
+          break;
+        }
+        long sampleUs = extractor.getSampleTime();
+        if (sampleUs > endUs) {
+          if (track == videoTrack || videoTrack < 0) {
+            break;
+          }
+          extractor.advance();
+          continue;
+        }
+        // Audio ahead of the first video key frame would play over a frozen first frame.
+        if (sampleUs >= firstSampleUs) {
+          info.offset = 0;
+          info.size = extractor.readSampleData(buffer, 0);
+          info.presentationTimeUs = sampleUs - firstSampleUs;
+          info.flags =
+              (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0
+                  ? MediaCodec.BUFFER_FLAG_KEY_FRAME
+                  : 0;
+          if (info.size > 0) {
+            muxer.writeSampleData(muxerTracks[track], buffer, info);
+          }
+        }
+        extractor.advance();
+      }
+      muxer.stop();
+      success = true;
+      return output.getPath();
+    } finally {
+      extractor.release();
+      if (muxer != null) {
+        try {
+          muxer.release();
+        } catch (IllegalStateException e) {
+          Log.w(TAG, "Unable to release muxer", e);
+        }
+      }
+      if (!success && output != null && output.exists() && !output.delete()) {
+        Log.w(TAG, "Unable to delete partial output " + output);
+      }
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package com.xiamijun.image_picker_controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class ImageProbeTest {
+  @Test
+  public void sniffsKnownFormats() {
+    assertEquals(ImageProbe.FORMAT_JPEG, sniff(0xFF, 0xD8, 0xFF, 0xE0));
+    assertEquals(ImageProbe.FORMAT_PNG, sniff(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A));
+    assertEquals(ImageProbe.FORMAT_GIF, sniff('G', 'I', 'F', '8', '9', 'a'));
+    assertEquals(
+        ImageProbe.FORMAT_WEBP, sniff('R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E', 'B', 'P'));
+    assertEquals(ImageProbe.FORMAT_BMP, sniff('B', 'M'));
+  }
+
+  @Test
+  public void sniffsHeifBrands() {
+    for (String brand : Arrays.asList("heic", "heix", "hevc", "mif1", "msf1")) {
+      assertEquals(brand, ImageProbe.FORMAT_HEIF, sniff(ftyp(brand)));
+    }
+    assertNull(sniff(ftyp("isom")));
+  }
+
+  @Test
+  public void ignoresBytesPastLength() {
+    byte[] header = bytes(0xFF, 0xD8, 0xFF, 0xE0);
+    assertNull(ImageProbe.sniffFormat(header, 2));
+    assertNull(ImageProbe.sniffFormat(new byte[ImageProbe.HEADER_SIZE], 0));
+  }
+
+  @Test
+  public void rejectsUnknownHeaders() {
+    assertNull(sniff('%', 'P', 'D', 'F', '-', '1'));
+    assertNull(sniff('R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'A', 'V', 'E'));
+  }
+
+  @Test
+  public void mapsFormatsToExtensions() {
+    assertEquals(".jpg", ImageProbe.extension(ImageProbe.FORMAT_JPEG));
+    assertEquals(".heic", ImageProbe.extension(ImageProbe.FORMAT_HEIF));
+    assertEquals(".png", ImageProbe.extension(ImageProbe.FORMAT_PNG));
+    assertNull(ImageProbe.extension(null));
+  }
+
+  private static String sniff(int... values) {
+    byte[] header = bytes(values);
+    return ImageProbe.sniffFormat(header, header.length);
+  }
+
+  private static int[] ftyp(String brand) {
+    int[] values = {0, 0, 0, 0x18, 'f', 't', 'y', 'p', 0, 0, 0, 0};
+    for (int i = 0; i < 4; i++) {
+      values[8 + i] = brand.charAt(i);
+    }
+    return values;
+  }
+
+  private static byte[] bytes(int... values) {
+    byte[] bytes = new byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      bytes[i] = (byte) values[i];
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,33 @@
+package com.xiamijun.image_picker_controller;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ImageResizerTest {
+  @Test
+  public void keepsFullSizeWithoutBounds() {
+    assertEquals(1, ImageResizer.calculateInSampleSize(4000, 3000, null, null));
+    assertEquals(1, ImageResizer.calculateInSampleSize(4000, 3000, 0.0, 0.0));
+  }
+
+  @Test
+  public void keepsFullSizeWhenUpscaling() {
+    assertEquals(1, ImageResizer.calculateInSampleSize(100, 100, 200.0, 200.0));
+  }
+
+  @Test
+  public void samplesToTheLargestPowerOfTwoAboveTheTarget() {
+    // Exactly a quarter: decoding at 1000 x 750 still fits.
+    assertEquals(4, ImageResizer.calculateInSampleSize(4000, 3000, 1000.0, null));
+    // A quarter would be 1000 wide, below 1500.
+    assertEquals(2, ImageResizer.calculateInSampleSize(4000, 3000, 1500.0, null));
+    assertEquals(2, ImageResizer.calculateInSampleSize(4000, 3000, null, 1500.0));
+  }
+
+  @Test
+  public void samplesForTheTighterBound() {
+    // Height wants a tenth, so 500 x 375 is decoded and scaled to 400 x 300.
+    assertEquals(8, ImageResizer.calculateInSampleSize(4000, 3000, 3000.0, 300.0));
+  }
+}
@@ -1,2 +1,8 @@
+export 'src/asset_handle.dart';
 export 'src/image_picker_configuration.dart';
 export 'src/picker_controller.dart';
+export 'src/media_library.dart';
+export 'src/picked_image.dart';
+export 'src/processing_event.dart';
+export 'src/processing_metrics.dart';
+export 'src/video_storyboard.dart';
@@ -0,0 +1,54 @@
+/// 资源句柄，Android only
+///
+/// Returned instead of files in handle result mode. Nothing is copied when
+/// picking; `materializeAsset` returns a file, copied once and cached, and
+/// `materializeAssetBytes` the bytes.
+class AssetHandle {
+  AssetHandle({
+    required this.id,
+    required this.uri,
+    this.mimeType,
+    this.size,
+    this.width,
+    this.height,
+    this.duration,
+  });
+
+  /// 媒体库id
+  final int id;
+
+  /// content:// uri，无媒体库id时为file:// uri
+  final String uri;
+
+  /// 如image/jpeg
+  final String? mimeType;
+
+  /// 文件大小，单位字节
+  final int? size;
+
+  final int? width;
+
+  final int? height;
+
+  /// 视频时长，图片为0
+  final Duration? duration;
+
+  factory AssetHandle.fromJson(Map<String, dynamic> json) {
+    return AssetHandle(
+      id: json['id'] as int,
+      uri: json['uri'] as String,
+      mimeType: json['mime'] as String?,
+      size: json['size'] as int?,
+      width: json['width'] as int?,
+      height: json['height'] as int?,
+      duration: json['duration'] == null
+          ? null
+          : Duration(milliseconds: json['duration'] as int),
+    );
+  }
+
+  @override
+  String toString() {
+    return 'AssetHandle($id, $uri, $mimeType, $size bytes, ${width}x$height)';
+  }
+}
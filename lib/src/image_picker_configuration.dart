@@ -1,3 +1,7 @@
+import 'dart:ui';
+
+import 'package:image_picker_controller/src/video_storyboard.dart';
+
 class ImagePickerConfiguration {
   ImagePickerConfiguration({
     this.maxImagesCount = 9,
@@ -8,6 +12,20 @@ class ImagePickerConfiguration {
     this.videoMaxDuration = 10 * 60,
     this.allowCrop = false,
     this.allowTakeVideo = false,
+    this.useLiteImageEngine = false,
+    this.maxWidth,
+    this.maxHeight,
+    this.imageQuality,
+    this.cropRect,
+    this.cropRectNormalized = false,
+    this.cropAspectRatio,
+    this.bakeOrientation = false,
+    this.transcode,
+    this.trim,
+    this.storyboard,
+    this.cover,
+    this.processingProfile = ProcessingProfile.auto,
+    this.maxInlineBytes,
   });
 
   /// Default is 9 / 默认最大可选9张图片
@@ -40,7 +58,67 @@ class ImagePickerConfiguration {
   /// 是否允许裁剪，默认为false
   bool allowCrop;
 
-  Map<String, dynamic> toJson() {
+  /// Android only. Load thumbnails with the built-in Glide-free engine instead of Glide.
+  /// 仅Android，使用不依赖Glide的轻量图片加载引擎，默认为false
+  bool useLiteImageEngine;
+
+  /// Android only. Picked images wider or taller are scaled down; images that
+  /// already fit, with no [imageQuality], are returned untouched.
+  /// 仅Android，图片最大宽度
+  double? maxWidth;
+
+  /// 仅Android，图片最大高度
+  double? maxHeight;
+
+  /// 仅Android，JPEG压缩质量，1-99，为空时不重新压缩
+  int? imageQuality;
+
+  /// Android only. Crop applied while decoding, in displayed (EXIF-rotated)
+  /// coordinates; only the pixels inside are read. Not applied to images
+  /// already cropped with [allowCrop].
+  /// 仅Android，解码时裁剪区域，[cropRectNormalized]为true时取值0-1
+  Rect? cropRect;
+
+  bool cropRectNormalized;
+
+  /// 仅Android，裁剪宽高比（宽/高），以[cropRect]或整张图片的中心裁剪
+  double? cropAspectRatio;
+
+  /// Android only. Rotate the pixels as the EXIF orientation says and write
+  /// the orientation as normal, so the file displays upright without reading
+  /// EXIF. [maxWidth] and [maxHeight] then apply to the displayed size.
+  /// 仅Android，按EXIF方向旋转图片像素
+  bool bakeOrientation;
+
+  /// Android only. Re-encode picked videos; null returns them as picked.
+  /// 仅Android，视频转码参数，为空时不转码
+  VideoTranscodeOptions? transcode;
+
+  /// Android only. Cut picked videos without re-encoding; null keeps them whole.
+  /// 仅Android，视频裁剪参数，为空时不裁剪
+  VideoTrimOptions? trim;
+
+  /// Android only. Extract a storyboard for each picked video; null skips it.
+  /// 仅Android，视频缩略图条参数，为空时不提取
+  VideoStoryboardOptions? storyboard;
+
+  /// Android only. How the video cover frame is chosen; null keeps the default.
+  /// 仅Android，视频封面参数
+  VideoCoverOptions? cover;
+
+  /// Android only. Memory and parallelism used to process picked media.
+  /// 仅Android，处理配置，默认在低内存设备上自动使用[ProcessingProfile.lowMemory]
+  ProcessingProfile processingProfile;
+
+  /// Android only. Largest result returned as bytes by `pickImageBytes` and
+  /// `processBatchBytes`; larger results are written to a file. Defaults to
+  /// 4 MB. Results past 16 MB of bytes in total per call are also files.
+  /// 仅Android，超过该大小时返回文件，默认4MB；每次调用字节总量上限16MB
+  int? maxInlineBytes;
+
+  /// [resultMode] is not part of the configuration: each controller method
+  /// sends the mode its return type expects.
+  Map<String, dynamic> toJson({ResultMode resultMode = ResultMode.path}) {
     return <String, dynamic>{
       'maxImageCount': maxImagesCount,
       'videoMaxDuration': videoMaxDuration,
@@ -50,6 +128,182 @@ class ImagePickerConfiguration {
       'allowPickingVideo': allowPickingVideo,
       'allowPickingImage': allowPickingImage,
       'allowCrop': allowCrop,
+      'useLiteImageEngine': useLiteImageEngine,
+      'maxWidth': maxWidth,
+      'maxHeight': maxHeight,
+      'imageQuality': imageQuality,
+      if (cropRect != null)
+        'cropRect': <double>[
+          cropRect!.left,
+          cropRect!.top,
+          cropRect!.right,
+          cropRect!.bottom,
+        ],
+      'cropRectNormalized': cropRectNormalized,
+      'cropAspectRatio': cropAspectRatio,
+      'bakeOrientation': bakeOrientation,
+      ...?transcode?.toJson(),
+      ...?trim?.toJson(),
+      if (storyboard != null) ...<String, dynamic>{
+        'storyboardFrameCount': storyboard!.frameCount,
+        'storyboardFrameSize': storyboard!.frameSize,
+        'storyboardSprite': storyboard!.sprite,
+      },
+      ...?cover?.toJson(),
+      'processingProfile': _processingProfileNames[processingProfile],
+      'resultMode': _resultModeNames[resultMode],
+      'maxInlineBytes': maxInlineBytes,
+    };
+  }
+}
+
+/// 图片和视频的处理配置
+enum ProcessingProfile {
+  /// 低内存设备（ActivityManager.isLowRamDevice）上使用[lowMemory]，否则[standard]
+  auto,
+
+  /// 并行处理，完整质量
+  standard,
+
+  /// For 1-2 GB devices: opaque images decode as RGB_565 with a capped size,
+  /// items are processed one at a time, picker thumbnails are smaller and
+  /// storyboards are skipped.
+  /// 适用于1-2GB内存的设备
+  lowMemory,
+}
+
+const Map<ProcessingProfile, String> _processingProfileNames =
+    <ProcessingProfile, String>{
+  ProcessingProfile.auto: 'auto',
+  ProcessingProfile.standard: 'standard',
+  ProcessingProfile.lowMemory: 'lowMemory',
+};
+
+/// 选择结果的形式
+enum ResultMode {
+  /// 处理（缩放、转码等）后的文件路径
+  path,
+
+  /// Lightweight handles returned without copying or processing; see
+  /// `AssetHandle`. Processing options are ignored.
+  /// 轻量句柄，按需获取文件
+  handle,
+
+  /// Processed images as encoded bytes, without writing or reading a file;
+  /// the bytes are copied through the channel codec. Results above
+  /// `maxInlineBytes`, or past 16 MB in total per call, fall back to files.
+  /// See `PickedImage`.
+  /// Bytes carry no EXIF, so the orientation is always baked into the pixels.
+  /// 处理后的图片字节，不写文件
+  bytes,
+}
+
+const Map<ResultMode, String> _resultModeNames = <ResultMode, String>{
+  ResultMode.path: 'path',
+  ResultMode.handle: 'handle',
+  ResultMode.bytes: 'bytes',
+};
+
+/// 视频转码参数
+///
+/// A null field keeps that property of the source. Videos that already meet
+/// every target are returned without re-encoding.
+class VideoTranscodeOptions {
+  VideoTranscodeOptions({
+    this.maxWidth,
+    this.maxHeight,
+    this.bitrate,
+    this.frameRate,
+  });
+
+  /// 最大宽度（按显示方向）
+  int? maxWidth;
+
+  /// 最大高度（按显示方向）
+  int? maxHeight;
+
+  /// 码率，单位bps
+  int? bitrate;
+
+  /// 帧率
+  int? frameRate;
+
+  Map<String, dynamic> toJson() {
+    return <String, dynamic>{
+      'transcodeMaxWidth': maxWidth,
+      'transcodeMaxHeight': maxHeight,
+      'transcodeBitrate': bitrate,
+      'transcodeFrameRate': frameRate,
+    };
+  }
+}
+
+/// 视频裁剪参数
+///
+/// Trimming copies samples without re-encoding, so the cut starts at the key
+/// frame at or before [startMs] and may begin slightly earlier than asked.
+class VideoTrimOptions {
+  VideoTrimOptions({
+    this.startMs,
+    this.endMs,
+    this.trimToMaxDuration = false,
+  });
+
+  /// 起始时间，单位毫秒
+  int? startMs;
+
+  /// 结束时间，单位毫秒，为空时保留到结尾
+  int? endMs;
+
+  /// 超过videoMaxDuration的视频也可以选择，并裁剪到该时长；
+  /// 裁剪失败时以`trim_failed`错误结束，不返回超长的原视频
+  bool trimToMaxDuration;
+
+  Map<String, dynamic> toJson() {
+    return <String, dynamic>{
+      'trimStartMs': startMs,
+      'trimEndMs': endMs,
+      'trimToMaxDuration': trimToMaxDuration,
+    };
+  }
+}
+
+/// 封面取帧方式
+enum VideoCoverSeekMode {
+  /// 取最近的关键帧，速度快，时间不精确
+  sync,
+
+  /// 取最接近的帧，需要从关键帧解码到该时间
+  closest,
+}
+
+/// 视频封面参数
+class VideoCoverOptions {
+  VideoCoverOptions({
+    this.time,
+    this.fraction,
+    this.seekMode = VideoCoverSeekMode.sync,
+    this.skipDarkFrames = false,
+  });
+
+  /// 封面时间，优先于[fraction]
+  Duration? time;
+
+  /// 封面位置占时长的比例，0-1
+  double? fraction;
+
+  VideoCoverSeekMode seekMode;
+
+  /// 为true时跳过过暗的帧（如黑场开头），向后查找
+  bool skipDarkFrames;
+
+  Map<String, dynamic> toJson() {
+    return <String, dynamic>{
+      'coverTimeMs': time?.inMilliseconds,
+      'coverTimeFraction': fraction,
+      'coverSeekMode':
+          seekMode == VideoCoverSeekMode.closest ? 'closest' : 'sync',
+      'skipDarkCoverFrames': skipDarkFrames,
     };
   }
 }
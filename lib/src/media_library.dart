@@ -0,0 +1,196 @@
+import 'dart:typed_data';
+
+/// 媒体类型
+enum MediaType { image, video, all }
+
+String? mediaTypeToJson(MediaType type) {
+  switch (type) {
+    case MediaType.image:
+      return 'image';
+    case MediaType.video:
+      return 'video';
+    case MediaType.all:
+      return null;
+  }
+}
+
+/// 相册
+class MediaAlbum {
+  MediaAlbum({
+    required this.id,
+    this.name,
+    required this.count,
+    this.coverId,
+    this.coverUri,
+  });
+
+  /// Album (bucket) id. The empty string is the "all media" album.
+  /// 相册id，空字符串表示全部
+  final String id;
+
+  /// 相册名称，全部相册为null
+  final String? name;
+
+  /// 资源数量
+  final int count;
+
+  /// 封面资源id
+  final int? coverId;
+
+  /// 封面资源uri
+  final String? coverUri;
+
+  bool get isAll => id.isEmpty;
+
+  factory MediaAlbum.fromJson(Map<String, dynamic> json) {
+    final coverId = json['coverId'] as int?;
+    return MediaAlbum(
+      id: json['id'] as String,
+      name: json['name'] as String?,
+      count: json['count'] as int,
+      coverId: coverId == null || coverId < 0 ? null : coverId,
+      coverUri: json['coverUri'] as String?,
+    );
+  }
+
+  @override
+  String toString() {
+    return 'MediaAlbum(id: $id, name: $name, count: $count)';
+  }
+}
+
+/// 媒体资源
+class MediaAsset {
+  MediaAsset({
+    required this.id,
+    required this.uri,
+    required this.mediaType,
+    this.mimeType,
+    required this.size,
+    required this.width,
+    required this.height,
+    required this.dateAdded,
+    required this.duration,
+  });
+
+  final int id;
+
+  /// content:// uri of the asset / 资源uri
+  final String uri;
+
+  final MediaType mediaType;
+
+  final String? mimeType;
+
+  /// 文件大小，单位字节
+  final int size;
+
+  final int width;
+
+  final int height;
+
+  /// 添加时间，单位秒
+  final int dateAdded;
+
+  /// 视频时长，单位毫秒；图片为0
+  final int duration;
+
+  @override
+  String toString() {
+    return 'MediaAsset(id: $id, uri: $uri, mimeType: $mimeType)';
+  }
+}
+
+/// 一页媒体资源
+class MediaAssetPage {
+  MediaAssetPage(this.assets, this.nextAfterDate, this.nextAfterId);
+
+  final List<MediaAsset> assets;
+
+  /// Keyset cursor of the next page, null when this is the last page.
+  /// 下一页的游标，为空表示已经没有更多
+  final int? nextAfterDate;
+  final int? nextAfterId;
+
+  bool get hasMore => nextAfterId != null;
+
+  /// Decodes the column-oriented page sent by the platform side.
+  factory MediaAssetPage.fromJson(Map<String, dynamic> json) {
+    final ids = json['ids'] as Int64List;
+    final mediaTypes = json['mediaTypes'] as Int32List;
+    final mimeTypes = (json['mimeTypes'] as List).cast<String?>();
+    final mimeTypeIndexes = json['mimeTypeIndexes'] as Int32List;
+    final sizes = json['sizes'] as Int64List;
+    final widths = json['widths'] as Int32List;
+    final heights = json['heights'] as Int32List;
+    final dates = json['dates'] as Int64List;
+    final durations = json['durations'] as Int64List;
+    final imageBaseUri = json['imageBaseUri'] as String;
+    final videoBaseUri = json['videoBaseUri'] as String;
+
+    final assets = List<MediaAsset>.generate(ids.length, (i) {
+      // MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO
+      final isVideo = mediaTypes[i] == 3;
+      return MediaAsset(
+        id: ids[i],
+        uri: '${isVideo ? videoBaseUri : imageBaseUri}/${ids[i]}',
+        mediaType: isVideo ? MediaType.video : MediaType.image,
+        mimeType: mimeTypes[mimeTypeIndexes[i]],
+        size: sizes[i],
+        width: widths[i],
+        height: heights[i],
+        dateAdded: dates[i],
+        duration: durations[i],
+      );
+    });
+    return MediaAssetPage(
+      assets,
+      json['nextAfterDate'] as int?,
+      json['nextAfterId'] as int?,
+    );
+  }
+}
+
+/// 媒体库增量变化
+class MediaChangeSet {
+  MediaChangeSet({
+    required this.token,
+    required this.reset,
+    required this.inserted,
+    required this.updated,
+    required this.deleted,
+    required this.deletesComplete,
+  });
+
+  /// Token to pass to the next [ImagePickerController.getMediaChanges] call.
+  final String token;
+
+  /// The token could not be resolved (first sync, or the volume was rebuilt):
+  /// the client must rescan instead of applying a delta.
+  /// 为true时需要全量重新查询
+  final bool reset;
+
+  final List<int> inserted;
+
+  /// Below Android 11 this may repeat ids already reported by the previous
+  /// sync, so apply changes as upserts.
+  /// Android 11以下可能包含上次已返回的id
+  final List<int> updated;
+
+  final List<int> deleted;
+
+  /// False when deletions since the token may be missing from [deleted]
+  /// (always false below Android 11).
+  final bool deletesComplete;
+
+  factory MediaChangeSet.fromJson(Map<String, dynamic> json) {
+    return MediaChangeSet(
+      token: json['token'] as String,
+      reset: json['reset'] as bool,
+      inserted: (json['inserted'] as List<int>?) ?? const <int>[],
+      updated: (json['updated'] as List<int>?) ?? const <int>[],
+      deleted: (json['deleted'] as List<int>?) ?? const <int>[],
+      deletesComplete: (json['deletesComplete'] as bool?) ?? false,
+    );
+  }
+}
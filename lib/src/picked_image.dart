@@ -0,0 +1,41 @@
+import 'dart:io';
+import 'dart:typed_data';
+
+/// 处理后的图片，Android only
+///
+/// Returned in bytes result mode: [bytes] when the encoded image was small
+/// enough to be sent over the channel, [file] otherwise, or when the original
+/// needed no processing.
+class PickedImage {
+  PickedImage.bytes(Uint8List this.bytes) : file = null;
+
+  PickedImage.file(File this.file) : bytes = null;
+
+  /// 编码后的图片字节，不含EXIF
+  final Uint8List? bytes;
+
+  /// 超过大小上限或无需处理时的文件
+  final File? file;
+
+  /// Returns [bytes], or reads [file].
+  Future<Uint8List> readAsBytes() async {
+    return bytes ?? await file!.readAsBytes();
+  }
+
+  static PickedImage? fromResult(dynamic result) {
+    if (result is Uint8List) {
+      return PickedImage.bytes(result);
+    }
+    if (result is String) {
+      return PickedImage.file(File(result));
+    }
+    return null;
+  }
+
+  @override
+  String toString() {
+    return bytes != null
+        ? 'PickedImage(${bytes!.length} bytes)'
+        : 'PickedImage(${file!.path})';
+  }
+}
@@ -1,18 +1,49 @@
 import 'dart:io';
+import 'dart:typed_data';
 
 import 'package:flutter/services.dart';
+import 'package:image_picker_controller/src/asset_handle.dart';
 import 'package:image_picker_controller/src/image_picker_configuration.dart';
+import 'package:image_picker_controller/src/media_library.dart';
+import 'package:image_picker_controller/src/picked_image.dart';
+import 'package:image_picker_controller/src/processing_event.dart';
+import 'package:image_picker_controller/src/processing_metrics.dart';
 import 'package:image_picker_controller/src/video_asset_model.dart';
+import 'package:image_picker_controller/src/video_storyboard.dart';
 
 class ImagePickerController {
   static const String _channelName = 'com.xiamijun.image_picker_controller';
   static const MethodChannel _channel = const MethodChannel(_channelName);
+  static const EventChannel _mediaChangesChannel =
+      const EventChannel('$_channelName/media_changes');
+  static const EventChannel _processingEventsChannel =
+      const EventChannel('$_channelName/processing_events');
 
   static const String _pickImageMethod = 'pickImage';
   // 选择视频
   static const String _pickVideoMethod = 'pickVideo';
   // 拍摄图片方法
   static const String _takeImageMethod = 'take_image';
+  // 自定义相册
+  static const String _getAlbumsMethod = 'getAlbums';
+  static const String _getAssetPageMethod = 'getAssetPage';
+  static const String _getMediaChangesMethod = 'getMediaChanges';
+  // 预加载
+  static const String _prewarmMethod = 'prewarm';
+  static const String _cancelPrewarmMethod = 'cancelPrewarm';
+  // 视频缩略图条
+  static const String _getVideoStoryboardMethod = 'getVideoStoryboard';
+  // 处理状态
+  static const String _getProcessingMetricsMethod = 'getProcessingMetrics';
+  // 处理优先级
+  static const String _setProcessingPrioritiesMethod =
+      'setProcessingPriorities';
+  // 选择过程中提前处理
+  static const String _updateSelectionMethod = 'updateSelection';
+  // 直接处理图片
+  static const String _processBatchMethod = 'processBatch';
+  // 句柄
+  static const String _materializeAssetMethod = 'materializeAsset';
 
   /// 相册选择图片
   static Future<List<File>?> pickImage([
@@ -22,7 +53,7 @@ class ImagePickerController {
 
     final filePaths = await _channel.invokeListMethod<String>(
       _pickImageMethod,
-      configuration.toJson(),
+      configuration.toJson(resultMode: ResultMode.path),
     );
     if (filePaths == null) {
       return null;
@@ -31,9 +62,18 @@ class ImagePickerController {
   }
 
   /// 相册选择视频
+  ///
+  /// [transcode]: 转码参数，Android only；转码进度见[processingEvents]
+  /// [trim]: 裁剪参数，Android only；先裁剪再转码
+  /// [storyboard]: 缩略图条参数，Android only；结果见[VideoAssetModel.storyboard]
+  /// [cover]: 封面参数，Android only
   static Future<List<VideoAssetModel>?> pickVideo({
     int maxDuration = 10 * 60,
     bool allowTakeVideo = true,
+    VideoTranscodeOptions? transcode,
+    VideoTrimOptions? trim,
+    VideoStoryboardOptions? storyboard,
+    VideoCoverOptions? cover,
   }) async {
     final configuration = ImagePickerConfiguration();
     configuration
@@ -41,7 +81,11 @@ class ImagePickerController {
       ..allowPickingImage = false
       ..allowTakeVideo = false
       ..videoMaxDuration = maxDuration
-      ..maxImagesCount = 1;
+      ..maxImagesCount = 1
+      ..transcode = transcode
+      ..trim = trim
+      ..storyboard = storyboard
+      ..cover = cover;
 
     final result = await _channel.invokeListMethod<Map>(
       _pickVideoMethod,
@@ -55,6 +99,96 @@ class ImagePickerController {
         .toList();
   }
 
+  /// 相册选择图片，处理后的图片直接以字节返回，Android only
+  ///
+  /// Results of at most [ImagePickerConfiguration.maxInlineBytes] are encoded
+  /// in memory and returned as bytes instead of being written to disk and
+  /// read back; larger ones are returned as files. The bytes are still copied
+  /// by the channel codec, and all results share one reply: once the bytes
+  /// of a call would pass 16 MB in total, the remaining results are files.
+  static Future<List<PickedImage>?> pickImageBytes([
+    ImagePickerConfiguration? configuration,
+  ]) async {
+    configuration ??= ImagePickerConfiguration();
+    final result = await _channel.invokeListMethod<dynamic>(
+      _pickImageMethod,
+      configuration.toJson(resultMode: ResultMode.bytes),
+    );
+    if (result == null) {
+      return null;
+    }
+    return result.map((e) => PickedImage.fromResult(e)!).toList();
+  }
+
+  /// 相册选择图片，立即返回句柄，Android only
+  ///
+  /// Nothing is copied or processed, so the time to result does not depend
+  /// on file size; see [materializeAsset]. Processing options in
+  /// [configuration] are ignored.
+  static Future<List<AssetHandle>?> pickImageHandles([
+    ImagePickerConfiguration? configuration,
+  ]) {
+    configuration ??= ImagePickerConfiguration();
+    return _pickHandles(_pickImageMethod, configuration);
+  }
+
+  /// 相册选择视频，立即返回句柄，Android only
+  static Future<List<AssetHandle>?> pickVideoHandles({
+    int maxDuration = 10 * 60,
+  }) {
+    final configuration = ImagePickerConfiguration();
+    configuration
+      ..allowTakePicture = false
+      ..allowPickingImage = false
+      ..allowTakeVideo = false
+      ..videoMaxDuration = maxDuration
+      ..maxImagesCount = 1;
+    return _pickHandles(_pickVideoMethod, configuration);
+  }
+
+  static Future<List<AssetHandle>?> _pickHandles(
+    String method,
+    ImagePickerConfiguration configuration,
+  ) async {
+    // 不修改调用方的配置，之后仍可用于pickImage
+    final result = await _channel.invokeListMethod<Map>(
+      method,
+      configuration.toJson(resultMode: ResultMode.handle),
+    );
+    if (result == null) {
+      return null;
+    }
+    return result
+        .map((e) => AssetHandle.fromJson(e.cast<String, dynamic>()))
+        .toList();
+  }
+
+  /// 获取句柄对应的文件，Android only
+  ///
+  /// Content is copied into the cache directory on first use and the copy is
+  /// reused while the source keeps its size. Copies are capped at 512 MB in
+  /// total and the least recently materialized are deleted first, so move the
+  /// file elsewhere to keep it.
+  static Future<File> materializeAsset(AssetHandle handle) async {
+    final path = await _channel.invokeMethod<String>(
+      _materializeAssetMethod,
+      <String, dynamic>{'uri': handle.uri},
+    );
+    return File(path!);
+  }
+
+  /// 获取句柄对应的字节，不写入磁盘，Android only
+  ///
+  /// Fails with a `too_large` [PlatformException] above 32 MB; use
+  /// [materializeAsset] for such files.
+  static Future<Uint8List> materializeAssetBytes(AssetHandle handle) async {
+    final bytes = await _channel.invokeMethod<Uint8List>(
+      _materializeAssetMethod,
+      <String, dynamic>{'uri': handle.uri, 'bytes': true},
+    );
+    return bytes!;
+  }
+
   // /// 选择单个图片
   // ///
   // /// 支持裁剪
@@ -90,4 +224,206 @@ class ImagePickerController {
     }
     return filePaths.map((path) => File(path)).toList();
   }
+
+  /// 获取相册列表，第一个为全部资源
+  ///
+  /// With [allowCached] the list comes from the persisted album index when
+  /// one exists and is reconciled with the media library in the background;
+  /// [mediaChanges] emits once the index has been refreshed.
+  /// Android only.
+  static Future<List<MediaAlbum>> getAlbums({
+    MediaType type = MediaType.all,
+    bool allowCached = true,
+  }) async {
+    final result = await _channel.invokeListMethod<Map>(
+      _getAlbumsMethod,
+      <String, dynamic>{
+        'mediaType': mediaTypeToJson(type),
+        'allowCached': allowCached,
+      },
+    );
+    if (result == null) {
+      return <MediaAlbum>[];
+    }
+    return result
+        .map((e) => MediaAlbum.fromJson(e.cast<String, dynamic>()))
+        .toList();
+  }
+
+  /// 分页获取资源，按添加时间倒序
+  ///
+  /// Pass the previous page as [after] to fetch the next one.
+  /// Android only.
+  static Future<MediaAssetPage> getAssetPage({
+    MediaAlbum? album,
+    MediaType type = MediaType.all,
+    int pageSize = 100,
+    MediaAssetPage? after,
+  }) async {
+    final result = await _channel.invokeMapMethod<String, dynamic>(
+      _getAssetPageMethod,
+      <String, dynamic>{
+        'mediaType': mediaTypeToJson(type),
+        'albumId': album?.id,
+        'pageSize': pageSize,
+        'afterDate': after?.nextAfterDate,
+        'afterId': after?.nextAfterId,
+      },
+    );
+    return MediaAssetPage.fromJson(result!);
+  }
+
+  /// 媒体库变化通知，事件为当前的变化token
+  ///
+  /// Emits (debounced) whenever images or videos are added, changed or
+  /// removed. Call [getMediaChanges] with the last synced token to get the
+  /// delta. Android only.
+  static Stream<String> get mediaChanges {
+    return _mediaChangesChannel
+        .receiveBroadcastStream()
+        .map((event) => event as String);
+  }
+
+  /// 获取自[token]以来的增量变化，[token]为空时返回当前token并要求全量查询
+  ///
+  /// Android only.
+  static Future<MediaChangeSet> getMediaChanges(String? token) async {
+    final result = await _channel.invokeMapMethod<String, dynamic>(
+      _getMediaChangesMethod,
+      <String, dynamic>{'token': token},
+    );
+    return MediaChangeSet.fromJson(result!);
+  }
+
+  /// 预加载相册首屏缩略图，在用户点击选择前调用可加快相册打开速度
+  ///
+  /// Runs the picker's first-page media query and decodes those thumbnails
+  /// into the image engine's memory cache in the background. Returns
+  /// immediately. Pass the same [configuration] that will be used for
+  /// [pickImage] / [pickVideo]. Android only.
+  static Future<void> prewarm([ImagePickerConfiguration? configuration]) {
+    configuration ??= ImagePickerConfiguration();
+    return _channel.invokeMethod<void>(_prewarmMethod, configuration.toJson());
+  }
+
+  /// 取消预加载
+  static Future<void> cancelPrewarm() {
+    return _channel.invokeMethod<void>(_cancelPrewarmMethod);
+  }
+
+  /// 提取视频缩略图条，Android only
+  ///
+  /// Can be called while a picker is open. Returns null when no frame could
+  /// be decoded.
+  static Future<VideoStoryboard?> getVideoStoryboard(
+    File video,
+    VideoStoryboardOptions options,
+  ) async {
+    final result = await _channel.invokeMapMethod<String, dynamic>(
+      _getVideoStoryboardMethod,
+      <String, dynamic>{'path': video.path, ...options.toJson()},
+    );
+    return result == null ? null : VideoStoryboard.fromJson(result);
+  }
+
+  /// 处理状态（并发数、内存压力等），Android only
+  static Future<ProcessingMetrics> getProcessingMetrics() async {
+    final result = await _channel.invokeMapMethod<String, dynamic>(
+      _getProcessingMetricsMethod,
+    );
+    return ProcessingMetrics.fromJson(result!);
+  }
+
+  /// 设置处理优先级，数值越大越先处理，Android only
+  ///
+  /// Keys are source paths, as listed by the `batchStarted` event in
+  /// [processingEvents]; a null value resets a path to the default 0. Items
+  /// still queued are reordered at once, so for example the images visible
+  /// on screen can be resized and delivered (as `imageReady` events) first.
+  /// Items already being processed are not interrupted.
+  static Future<void> setProcessingPriorities(Map<String, int?> priorities) {
+    return _channel.invokeMethod<void>(
+      _setProcessingPrioritiesMethod,
+      <String, dynamic>{'priorities': priorities},
+    );
+  }
+
+  /// 更新当前选择，后台提前处理已选图片，Android only
+  ///
+  /// For galleries built on [getAssetPage]: call whenever the selection
+  /// changes, with the file paths or `content://` uris of the selected
+  /// images and the [configuration] they will be processed with. Newly
+  /// selected images are resized in the background, and work for images no
+  /// longer selected is discarded, so results matching the same
+  /// configuration are ready when the selection is confirmed. Pass an empty
+  /// list to discard everything. The stock picker UI does not report its
+  /// selection, so this has no effect on [pickImage] alone.
+  static Future<void> updateSelection(
+    List<String> sources, [
+    ImagePickerConfiguration? configuration,
+  ]) {
+    configuration ??= ImagePickerConfiguration();
+    return _channel.invokeMethod<void>(
+      _updateSelectionMethod,
+      <String, dynamic>{
+        'sources': sources,
+        'configuration': configuration.toJson(),
+      },
+    );
+  }
+
+  /// 不打开相册，直接按[configuration]处理图片，Android only
+  ///
+  /// For images received some other way, such as share intents or
+  /// downloads. [sources] are file paths or `file://` / `content://` uris.
+  /// Batches run concurrently with each other and with an open picker. Each
+  /// image is also sent as an `imageReady` event on [processingEvents],
+  /// tagged with [batchId], as soon as it is done, and can be reordered with
+  /// [setProcessingPriorities]. Returns the output files in source order;
+  /// an entry is null when its source could not be read.
+  static Future<List<File?>> processBatch(
+    List<String> sources, {
+    ImagePickerConfiguration? configuration,
+    String? batchId,
+  }) async {
+    configuration ??= ImagePickerConfiguration();
+    final result = await _channel.invokeListMethod<String?>(
+      _processBatchMethod,
+      <String, dynamic>{
+        'sources': sources,
+        'configuration': configuration.toJson(resultMode: ResultMode.path),
+        'batchId': batchId,
+      },
+    );
+    return (result ?? <String?>[])
+        .map((path) => path == null ? null : File(path))
+        .toList();
+  }
+
+  /// 直接处理图片，处理后的图片以字节返回，Android only
+  ///
+  /// As [processBatch], with results as in [pickImageBytes]; `imageReady`
+  /// events carry no result path for results returned as bytes.
+  static Future<List<PickedImage?>> processBatchBytes(
+    List<String> sources, {
+    ImagePickerConfiguration? configuration,
+    String? batchId,
+  }) async {
+    configuration ??= ImagePickerConfiguration();
+    final result = await _channel.invokeListMethod<dynamic>(
+      _processBatchMethod,
+      <String, dynamic>{
+        'sources': sources,
+        'configuration': configuration.toJson(resultMode: ResultMode.bytes),
+        'batchId': batchId,
+      },
+    );
+    return (result ?? <dynamic>[]).map(PickedImage.fromResult).toList();
+  }
+
+  /// 处理事件（如转码进度），Android only
+  static Stream<ProcessingEvent> get processingEvents {
+    return _processingEventsChannel.receiveBroadcastStream().map((event) =>
+        ProcessingEvent.fromJson((event as Map).cast<String, dynamic>()));
+  }
 }
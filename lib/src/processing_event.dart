@@ -0,0 +1,49 @@
+import 'package:image_picker_controller/src/video_storyboard.dart';
+
+/// 处理事件
+class ProcessingEvent {
+  ProcessingEvent(this.type, this.data);
+
+  /// Event type: `transcodeProgress`, `storyboard`, `batchStarted` or
+  /// `imageReady`.
+  final String type;
+
+  /// The raw event payload.
+  final Map<String, dynamic> data;
+
+  /// 选择结果中的下标
+  int? get index => data['index'] as int?;
+
+  /// 源文件路径
+  String? get path => data['path'] as String?;
+
+  /// `processBatch`传入的批次id
+  String? get batchId => data['batchId'] as String?;
+
+  /// 处理结果路径，`imageReady`事件
+  String? get resultPath => data['resultPath'] as String?;
+
+  /// 本次处理的全部源文件路径，`batchStarted`事件
+  List<String>? get paths => (data['paths'] as List?)?.cast<String>();
+
+  /// 进度，0~1
+  double? get progress => (data['progress'] as num?)?.toDouble();
+
+  /// 推迟生成的缩略图条，`storyboard`事件
+  VideoStoryboard? get storyboard => data['storyboard'] == null
+      ? null
+      : VideoStoryboard.fromJson(
+          (data['storyboard'] as Map).cast<String, dynamic>());
+
+  /// 失败原因
+  String? get error => data['error'] as String?;
+
+  factory ProcessingEvent.fromJson(Map<String, dynamic> json) {
+    return ProcessingEvent(json['event'] as String, json);
+  }
+
+  @override
+  String toString() {
+    return 'ProcessingEvent($type, $data)';
+  }
+}
@@ -0,0 +1,64 @@
+/// 处理状态，Android only
+///
+/// A snapshot of how the plugin is currently throttling post-pick processing.
+class ProcessingMetrics {
+  ProcessingMetrics(this.data);
+
+  /// The raw metrics map; keys not covered by the getters below may be added.
+  final Map<String, dynamic> data;
+
+  /// 同时运行的处理任务上限
+  int get concurrency => data['concurrency'] as int;
+
+  int get activeJobs => data['activeJobs'] as int;
+
+  int get queuedJobs => data['queuedJobs'] as int;
+
+  /// 因过热或省电推迟的非紧急任务数
+  int get deferredJobs => data['deferredJobs'] as int;
+
+  /// 推迟非紧急任务的原因，如`power`
+  List<String> get deferReasons =>
+      (data['deferReasons'] as List).cast<String>();
+
+  /// 内存压力：`none`, `moderate` 或 `critical`
+  String get memoryPressure => data['memoryPressure'] as String;
+
+  /// 最近一次onTrimMemory的级别，未收到时为-1
+  int get lastTrimLevel => data['lastTrimLevel'] as int;
+
+  /// 图片解码可用的内存预算，单位字节
+  int get memoryBudgetBytes => data['memoryBudgetBytes'] as int;
+
+  int get memoryBudgetUsedBytes => data['memoryBudgetUsedBytes'] as int;
+
+  /// 内存不足时解码采样率的倍数，正常为1
+  int get sampleSizeFactor => data['sampleSizeFactor'] as int;
+
+  /// 选择过程中提前处理的图片数
+  int get speculativeEntries => data['speculativeEntries'] as int;
+
+  /// 提前处理的结果被使用的次数
+  int get speculativeHits => data['speculativeHits'] as int;
+
+  /// 因取消选择或参数变化而丢弃的提前处理结果数
+  int get speculativeDiscards => data['speculativeDiscards'] as int;
+
+  /// PowerManager.getCurrentThermalStatus()，API 29以下为-1
+  int get thermalStatus => data['thermalStatus'] as int;
+
+  /// 是否处于省电模式
+  bool get powerSaveMode => data['powerSaveMode'] as bool;
+
+  /// 因温度或省电的限流：`none`, `reduced` 或 `minimal`
+  String get powerThrottle => data['powerThrottle'] as String;
+
+  factory ProcessingMetrics.fromJson(Map<String, dynamic> json) {
+    return ProcessingMetrics(json);
+  }
+
+  @override
+  String toString() {
+    return 'ProcessingMetrics($data)';
+  }
+}
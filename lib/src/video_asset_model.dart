@@ -1,5 +1,7 @@
 import 'dart:io';
 
+import 'package:image_picker_controller/src/video_storyboard.dart';
+
 /// 视频资源模型
 class VideoAssetModel {
   VideoAssetModel();
@@ -10,6 +12,37 @@ class VideoAssetModel {
   /// 视频封面
   File? coverImage;
 
+  /// 转码前的原视频，未转码时为空
+  File? originalVideo;
+
+  /// 时长
+  Duration? duration;
+
+  /// 宽度（编码尺寸，未应用[rotation]）
+  int? width;
+
+  /// 高度（编码尺寸，未应用[rotation]）
+  int? height;
+
+  /// 旋转角度，0/90/180/270
+  int? rotation;
+
+  /// 码率，单位bps
+  int? bitrate;
+
+  /// 视频编码，如video/avc
+  String? codec;
+
+  /// 容器格式，如video/mp4
+  String? mimeType;
+
+  /// 缩略图条，未请求时为空
+  VideoStoryboard? storyboard;
+
+  /// 设备过热或省电时缩略图条推迟生成（最长10分钟），稍后以`storyboard`处理事件送达；
+  /// 插件卸载时事件带`error`
+  bool storyboardDeferred = false;
+
   factory VideoAssetModel.fromJson(Map<String, dynamic> json) {
     final model = VideoAssetModel();
     if (json['videoPath'] != null) {
@@ -18,11 +51,31 @@ class VideoAssetModel {
     if (json['coverPath'] != null) {
       model.coverImage = File(json['coverPath']);
     }
+    if (json['originalVideoPath'] != null &&
+        json['originalVideoPath'] != json['videoPath']) {
+      model.originalVideo = File(json['originalVideoPath']);
+    }
+    if (json['duration'] != null) {
+      model.duration = Duration(milliseconds: json['duration']);
+    }
+    model.width = json['width'];
+    model.height = json['height'];
+    model.rotation = json['rotation'];
+    model.bitrate = json['bitrate'];
+    model.codec = json['codec'];
+    model.mimeType = json['mimeType'];
+    if (json['storyboard'] != null) {
+      model.storyboard = VideoStoryboard.fromJson(
+          (json['storyboard'] as Map).cast<String, dynamic>());
+    }
+    model.storyboardDeferred = json['storyboardDeferred'] == true;
     return model;
   }
 
   @override
   String toString() {
-    return 'video file: $video, cover image: $coverImage';
+    return 'video file: $video, cover image: $coverImage, '
+        'duration: $duration, size: ${width}x$height, rotation: $rotation, '
+        'bitrate: $bitrate, codec: $codec';
   }
 }
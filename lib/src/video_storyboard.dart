@@ -0,0 +1,82 @@
+import 'dart:io';
+
+/// 视频缩略图条参数
+///
+/// Frames are evenly spaced and taken at the nearest key frame, so their
+/// times are approximate. Results are cached per video and options.
+class VideoStoryboardOptions {
+  VideoStoryboardOptions({
+    required this.frameCount,
+    this.frameSize = 160,
+    this.sprite = true,
+    this.quality = 80,
+  });
+
+  /// 帧数，最多100
+  int frameCount;
+
+  /// 每帧最长边，单位像素
+  int frameSize;
+
+  /// 为true时拼成一张雪碧图，否则每帧一个JPEG文件
+  bool sprite;
+
+  /// JPEG质量，0-100
+  int quality;
+
+  Map<String, dynamic> toJson() {
+    return <String, dynamic>{
+      'frameCount': frameCount,
+      'frameSize': frameSize,
+      'sprite': sprite,
+      'quality': quality,
+    };
+  }
+}
+
+/// 视频缩略图条
+class VideoStoryboard {
+  VideoStoryboard({
+    required this.times,
+    required this.frameWidth,
+    required this.frameHeight,
+    this.sprite,
+    this.columns,
+    this.rows,
+    this.frames,
+  });
+
+  /// 每帧请求的时间，按顺序
+  final List<Duration> times;
+
+  final int frameWidth;
+
+  final int frameHeight;
+
+  /// 雪碧图，帧按行排列，每格[frameWidth]x[frameHeight]
+  final File? sprite;
+
+  final int? columns;
+
+  final int? rows;
+
+  /// 每帧一个文件时的帧列表，与[times]一一对应；解码失败的帧为null
+  final List<File?>? frames;
+
+  factory VideoStoryboard.fromJson(Map<String, dynamic> json) {
+    final framePaths = json['framePaths'] as List<dynamic>?;
+    return VideoStoryboard(
+      times: (json['timesMs'] as List<int>)
+          .map((e) => Duration(milliseconds: e))
+          .toList(),
+      frameWidth: json['frameWidth'] as int,
+      frameHeight: json['frameHeight'] as int,
+      sprite: json['spritePath'] != null ? File(json['spritePath']) : null,
+      columns: json['columns'] as int?,
+      rows: json['rows'] as int?,
+      frames: framePaths
+          ?.map((e) => e != null ? File(e as String) : null)
+          .toList(),
+    );
+  }
+}
@@ -1,5 +1,8 @@
+import 'dart:typed_data';
+
 import 'package:flutter/services.dart';
 import 'package:flutter_test/flutter_test.dart';
+import 'package:image_picker_controller/image_picker_controller.dart';
 
 void main() {
   const MethodChannel channel =
@@ -7,9 +10,15 @@ void main() {
 
   TestWidgetsFlutterBinding.ensureInitialized();
 
+  final List<MethodCall> log = <MethodCall>[];
+  dynamic response;
+
   setUp(() {
+    log.clear();
+    response = null;
     channel.setMockMethodCallHandler((MethodCall methodCall) async {
-      return '42';
+      log.add(methodCall);
+      return response;
     });
   });
 
@@ -17,5 +26,189 @@ void main() {
     channel.setMockMethodCallHandler(null);
   });
 
-  test('getPlatformVersion', () async {});
+  Map<String, dynamic> assetPage({int? nextAfterDate, int? nextAfterId}) {
+    return <String, dynamic>{
+      'ids': Int64List.fromList(<int>[12, 11]),
+      'mediaTypes': Int32List.fromList(<int>[1, 3]),
+      'mimeTypes': <String?>['image/jpeg', 'video/mp4'],
+      'mimeTypeIndexes': Int32List.fromList(<int>[0, 1]),
+      'sizes': Int64List.fromList(<int>[1024, 4096]),
+      'widths': Int32List.fromList(<int>[4000, 1920]),
+      'heights': Int32List.fromList(<int>[3000, 1080]),
+      'dates': Int64List.fromList(<int>[1600000002, 1600000001]),
+      'durations': Int64List.fromList(<int>[0, 15000]),
+      'imageBaseUri': 'content://media/external/images/media',
+      'videoBaseUri': 'content://media/external/video/media',
+      'nextAfterDate': nextAfterDate,
+      'nextAfterId': nextAfterId,
+    };
+  }
+
+  group('MediaAssetPage', () {
+    test('decodes the column-oriented page', () async {
+      response = assetPage(nextAfterDate: 1600000001, nextAfterId: 11);
+
+      final page = await ImagePickerController.getAssetPage(pageSize: 2);
+
+      expect(page.assets, hasLength(2));
+      final image = page.assets[0];
+      expect(image.id, 12);
+      expect(image.uri, 'content://media/external/images/media/12');
+      expect(image.mediaType, MediaType.image);
+      expect(image.mimeType, 'image/jpeg');
+      expect(image.size, 1024);
+      expect(image.width, 4000);
+      expect(image.height, 3000);
+      expect(image.dateAdded, 1600000002);
+      final video = page.assets[1];
+      expect(video.uri, 'content://media/external/video/media/11');
+      expect(video.mediaType, MediaType.video);
+      expect(video.mimeType, 'video/mp4');
+      expect(video.duration, 15000);
+      expect(page.nextAfterDate, 1600000001);
+      expect(page.nextAfterId, 11);
+      expect(page.hasMore, isTrue);
+    });
+
+    test('has no cursor on the last page', () async {
+      response = assetPage();
+
+      final page = await ImagePickerController.getAssetPage(pageSize: 2);
+
+      expect(page.nextAfterDate, isNull);
+      expect(page.nextAfterId, isNull);
+      expect(page.hasMore, isFalse);
+    });
+
+    test('passes the cursor of the previous page', () async {
+      response = assetPage(nextAfterDate: 1600000001, nextAfterId: 11);
+      final first = await ImagePickerController.getAssetPage(pageSize: 2);
+      response = assetPage();
+
+      await ImagePickerController.getAssetPage(pageSize: 2, after: first);
+
+      expect(log[1].method, 'getAssetPage');
+      expect(log[1].arguments['pageSize'], 2);
+      expect(log[1].arguments['afterDate'], 1600000001);
+      expect(log[1].arguments['afterId'], 11);
+    });
+  });
+
+  group('MediaChangeSet', () {
+    test('decodes a delta', () async {
+      response = <String, dynamic>{
+        'token': '1:42',
+        'reset': false,
+        'inserted': Int64List.fromList(<int>[5, 6]),
+        'updated': Int64List.fromList(<int>[3]),
+        'deleted': Int64List.fromList(<int>[1]),
+        'deletesComplete': true,
+      };
+
+      final changes = await ImagePickerController.getMediaChanges('1:40');
+
+      expect(log.single.arguments['token'], '1:40');
+      expect(changes.token, '1:42');
+      expect(changes.reset, isFalse);
+      expect(changes.inserted, <int>[5, 6]);
+      expect(changes.updated, <int>[3]);
+      expect(changes.deleted, <int>[1]);
+      expect(changes.deletesComplete, isTrue);
+    });
+
+    test('defaults missing lists to empty on reset', () async {
+      response = <String, dynamic>{'token': '1:42', 'reset': true};
+
+      final changes = await ImagePickerController.getMediaChanges(null);
+
+      expect(changes.reset, isTrue);
+      expect(changes.inserted, isEmpty);
+      expect(changes.updated, isEmpty);
+      expect(changes.deleted, isEmpty);
+      expect(changes.deletesComplete, isFalse);
+    });
+  });
+
+  group('PickedImage', () {
+    test('wraps bytes', () {
+      final image = PickedImage.fromResult(Uint8List.fromList(<int>[1, 2]))!;
+
+      expect(image.bytes, <int>[1, 2]);
+      expect(image.file, isNull);
+    });
+
+    test('wraps a path', () {
+      final image = PickedImage.fromResult('/tmp/a.jpg')!;
+
+      expect(image.bytes, isNull);
+      expect(image.file!.path, '/tmp/a.jpg');
+    });
+
+    test('returns null for anything else', () {
+      expect(PickedImage.fromResult(null), isNull);
+      expect(PickedImage.fromResult(42), isNull);
+    });
+  });
+
+  group('resultMode', () {
+    test('defaults to path', () {
+      expect(ImagePickerConfiguration().toJson()['resultMode'], 'path');
+    });
+
+    test('pickImage asks for paths', () async {
+      response = <String>['/tmp/a.jpg'];
+
+      final files = await ImagePickerController.pickImage();
+
+      expect(log.single.method, 'pickImage');
+      expect(log.single.arguments['resultMode'], 'path');
+      expect(files!.single.path, '/tmp/a.jpg');
+    });
+
+    test('pickImageBytes asks for bytes and accepts both kinds', () async {
+      response = <dynamic>[Uint8List.fromList(<int>[1, 2]), '/tmp/b.jpg'];
+
+      final images = await ImagePickerController.pickImageBytes();
+
+      expect(log.single.method, 'pickImage');
+      expect(log.single.arguments['resultMode'], 'bytes');
+      expect(images![0].bytes, <int>[1, 2]);
+      expect(images[1].file!.path, '/tmp/b.jpg');
+    });
+
+    test('pickImageHandles asks for handles', () async {
+      response = <Map>[
+        <String, dynamic>{
+          'id': 7,
+          'uri': 'content://media/external/images/media/7',
+          'mime': 'image/jpeg',
+        },
+      ];
+      final configuration = ImagePickerConfiguration();
+
+      final handles =
+          await ImagePickerController.pickImageHandles(configuration);
+
+      expect(log.single.arguments['resultMode'], 'handle');
+      expect(handles!.single.id, 7);
+      expect(handles.single.mimeType, 'image/jpeg');
+      // The caller's configuration is not changed.
+      expect(configuration.toJson()['resultMode'], 'path');
+    });
+
+    test('processBatchBytes keeps unreadable sources as null', () async {
+      response = <dynamic>[Uint8List.fromList(<int>[1]), null];
+
+      final images = await ImagePickerController.processBatchBytes(
+        <String>['/tmp/a.jpg', '/tmp/missing.jpg'],
+        batchId: 'batch',
+      );
+
+      expect(log.single.method, 'processBatch');
+      expect(log.single.arguments['configuration']['resultMode'], 'bytes');
+      expect(log.single.arguments['batchId'], 'batch');
+      expect(images[0]!.bytes, <int>[1]);
+      expect(images[1], isNull);
+    });
+  });
 }